@@ -238,10 +238,8 @@ public class EncryptChooseAreaController {
             BufferedImage originalImage = imageUtils.getOriginalImage();
             if (originalImage != null) {
                 EncryptedData data = imageEncryptor.encryptWhole(originalImage);
-                File outFile = fileManager.saveEncryptedImage(data.sessionSalt(), data.attemptCount(),
-                        data.imageBytes(), data.originalWidth(), data.originalHeight(),
-                        data.startX(), data.startY(), data.areaWidth(), data.areaHeight());
-                sceneManager.showEncryptFinalPanel(imageUtils.bytesToImage(data.imageBytes(),
+                File outFile = fileManager.saveEncryptedImage(data);
+                sceneManager.showEncryptFinalPanel(imageUtils.wrapBytes(data.imageBytes(),
                         data.originalWidth(), data.originalHeight()), outFile);
             }
         } catch (Exception e) {
@@ -268,10 +266,8 @@ public class EncryptChooseAreaController {
                 return;
             }
             EncryptedData data = imageEncryptor.encryptPart(imageToEncrypt, selectedRectangle);
-            File outFile = fileManager.saveEncryptedImage(data.sessionSalt(), data.attemptCount(),
-                    data.imageBytes(), data.originalWidth(), data.originalHeight(),
-                    data.startX(), data.startY(), data.areaWidth(), data.areaHeight());
-            sceneManager.showEncryptFinalPanel(imageUtils.bytesToImage(data.imageBytes(),
+            File outFile = fileManager.saveEncryptedImage(data);
+            sceneManager.showEncryptFinalPanel(imageUtils.wrapBytes(data.imageBytes(),
                     data.originalWidth(), data.originalHeight()), outFile);
             clearRectangles();
 
@@ -122,18 +122,14 @@ public class EncryptGenerateController {
             @Override
             protected Image call() throws Exception {
                 int maxAttempts = 50;
-                for (int i = 0; i < maxAttempts; i++) {
-                    if (isCancelled()) return null;
-
-                    BufferedImage fractal = imageEncryptor.generateNextFractal(
-                            originalImage.getWidth(), originalImage.getHeight());
-                    if (!mandelbrotService.isFractalValid(fractal)) {
-                        ConsoleManager.log("Попытка " + (i+1) + ": фрактал не подходит, продолжаем...");
-                        continue;
-                    }
-                    return SwingFXUtils.toFXImage(fractal, null);
+                BufferedImage fractal = imageEncryptor.generateValidFractal(
+                        originalImage.getWidth(), originalImage.getHeight(), maxAttempts,
+                        attempt -> ConsoleManager.log("Попытка " + attempt + ": фрактал не подходит, продолжаем..."));
+                if (isCancelled()) return null;
+                if (fractal == null) {
+                    throw new RuntimeException("Не удалось получить качественный фрактал");
                 }
-                throw new RuntimeException("Не удалось получить качественный фрактал");
+                return SwingFXUtils.toFXImage(fractal, null);
             }
         };
 
@@ -195,10 +191,8 @@ public class EncryptGenerateController {
                 logger.error("original image is null");
             }
             EncryptedData data = imageEncryptor.encryptWhole(imageToEncrypt);
-            File outFile = fileManager.saveEncryptedImage(data.sessionSalt(), data.attemptCount(),
-                    data.imageBytes(), data.originalWidth(), data.originalHeight(),
-                    data.startX(), data.startY(), data.areaWidth(), data.areaHeight());
-            sceneManager.showEncryptFinalPanel(imageUtils.bytesToImage(data.imageBytes(),
+            File outFile = fileManager.saveEncryptedImage(data);
+            sceneManager.showEncryptFinalPanel(imageUtils.wrapBytes(data.imageBytes(),
                     data.originalWidth(), data.originalHeight()), outFile);
         } catch (Exception e) {
             logger.error("Ошибка шифрования", e);
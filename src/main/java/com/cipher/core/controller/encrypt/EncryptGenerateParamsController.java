@@ -2,6 +2,7 @@ package com.cipher.core.controller.encrypt;
 
 import com.cipher.core.dto.MandelbrotParams;
 import com.cipher.core.service.encryption.MandelbrotService;
+import com.cipher.core.threading.PaletteVersion;
 import com.cipher.core.utils.*;
 import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
@@ -113,11 +114,17 @@ public class EncryptGenerateParamsController {
                             mandelbrotParams.zoom(),
                             mandelbrotParams.offsetX(),
                             mandelbrotParams.offsetY(),
-                            mandelbrotParams.maxIter()
+                            mandelbrotParams.maxIter(),
+                            PaletteVersion.CURRENT
                     );
 
+                    // Отменённая генерация возвращает null: прежнее изображение в ImageUtils
+                    // не заменяется ни пустым, ни недорисованным
+                    if (mandelbrotImage == null || isCancelled()) {
+                        return null;
+                    }
                     imageUtils.setMandelbrotImage(mandelbrotImage, mandelbrotParams);
-                    return mandelbrotImage != null ? SwingFXUtils.toFXImage(mandelbrotImage, null) : null;
+                    return SwingFXUtils.toFXImage(mandelbrotImage, null);
 
                 } catch (Exception e) {
                     logger.error("Ошибка генерации изображения с параметрами", e);
@@ -0,0 +1,22 @@
+package com.cipher.core.dto;
+
+import com.cipher.core.threading.RenderStats;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Результат генерации фрактала с проверкой качества.
+ *
+ * @param image изображение фрактала; {@code null}, если фрактал не прошёл проверку
+ * @param valid true, если фрактал прошёл проверку
+ * @param stats статистика, накопленная ядром при генерации полного изображения
+ */
+public record RenderedFractal(BufferedImage image, boolean valid, RenderStats stats) {
+
+    /**
+     * @return результат для отклонённого фрактала, генерация которого могла быть прервана досрочно
+     */
+    public static RenderedFractal rejected(RenderStats stats) {
+        return new RenderedFractal(null, false, stats);
+    }
+}
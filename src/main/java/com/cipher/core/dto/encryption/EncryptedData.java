@@ -1,8 +1,12 @@
 package com.cipher.core.dto.encryption;
 
+import com.cipher.core.service.encryption.util.PrngVersion;
+import com.cipher.core.threading.PaletteVersion;
+
 /**
  * DTO для зашифрованных данных
  */
 public record EncryptedData(byte[] sessionSalt, int attemptCount, int startX, int startY,
                             int areaWidth, int areaHeight, int originalWidth, int originalHeight,
-                            byte[] imageBytes) {}
\ No newline at end of file
+                            byte[] imageBytes, PaletteVersion paletteVersion,
+                            PrngVersion prngVersion) {}
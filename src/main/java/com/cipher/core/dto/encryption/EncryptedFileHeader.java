@@ -0,0 +1,15 @@
+package com.cipher.core.dto.encryption;
+
+import com.cipher.core.service.encryption.util.PrngVersion;
+import com.cipher.core.threading.PaletteVersion;
+
+/**
+ * Заголовок зашифрованного файла .bin
+ *
+ * @param formatVersion версия формата файла (1 — исходный формат без сигнатуры)
+ * @param paletteVersion версия палитры, которой окрашен фрактал
+ * @param prngVersion версия генератора параметров фрактала и перестановки сегментов
+ */
+public record EncryptedFileHeader(int formatVersion, PaletteVersion paletteVersion, PrngVersion prngVersion,
+                                  byte[] sessionSalt, int attemptCount, int startX, int startY,
+                                  int areaWidth, int areaHeight, int fullWidth, int fullHeight) {}
@@ -0,0 +1,11 @@
+package com.cipher.core.dto.segmentation;
+
+/**
+ * Перестановка сегментов без пикселей: по ней перемешанное изображение восстанавливается
+ * без промежуточной копии.
+ *
+ * @param segmentSize    сторона сегмента
+ * @param sourceSegments элемент i — номер сегмента перемешанного изображения (построчно по его сетке),
+ *                       который нужно поместить в позицию i
+ */
+public record SegmentMapping(int segmentSize, int[] sourceSegments) {}
@@ -1,12 +1,48 @@
 package com.cipher.core.dto.segmentation;
 
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+
 import java.awt.image.BufferedImage;
-import java.util.Map;
 
+/**
+ * Результат перемешивания сегментов изображения.
+ * <p>
+ * Перестановка хранится массивом {@code int[]} — 4 байта на сегмент вместо записи {@code HashMap}
+ * с двумя упакованными {@code Integer}, что существенно при сегментах размером в пиксель.
+ * </p>
+ *
+ * @param shuffledImage  перемешанное изображение
+ * @param segmentSize    сторона сегмента
+ * @param paddedWidth    ширина изображения после дополнения
+ * @param paddedHeight   высота изображения после дополнения
+ * @param segmentMapping элемент i — номер исходного сегмента (построчно по сетке дополненного изображения),
+ *                       попавшего в позицию i; {@code null}, если перестановка не запрашивалась
+ */
 public record SegmentationResult(
         BufferedImage shuffledImage,
         int segmentSize,
         int paddedWidth,
         int paddedHeight,
-        Map<Integer, Integer> segmentMapping
-) {}
+        int[] segmentMapping
+) {
+
+    /**
+     * @return true, если результат содержит перестановку
+     */
+    public boolean hasMapping() {
+        return segmentMapping != null;
+    }
+
+    /**
+     * Вычисляет обратную перестановку за O(n) без хеширования.
+     *
+     * @return элемент j — позиция, в которую попал исходный сегмент j
+     * @throws IllegalStateException если перестановка не запрашивалась
+     */
+    public int[] inverseMapping() {
+        if (segmentMapping == null) {
+            throw new IllegalStateException("Segment mapping was not requested");
+        }
+        return SegmentPermutation.inverse(segmentMapping);
+    }
+}
@@ -0,0 +1,572 @@
+package com.cipher.core.service.encryption;
+
+import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.dto.RenderedFractal;
+import com.cipher.core.dto.segmentation.SegmentMapping;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import com.cipher.core.service.encryption.util.XOR;
+import com.cipher.core.threading.CancellationToken;
+import com.cipher.core.threading.FractalValidator;
+import com.cipher.core.threading.JitteredSampleKernel;
+import com.cipher.core.threading.KernelType;
+import com.cipher.core.threading.MandelbrotKernel;
+import com.cipher.core.threading.MandelbrotKernels;
+import com.cipher.core.threading.MandelbrotTileTask;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.PixelSink;
+import com.cipher.core.threading.PixelSinks;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderContext;
+import com.cipher.core.threading.RenderMode;
+import com.cipher.core.threading.RenderPool;
+import com.cipher.core.threading.RenderStats;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.security.SecureRandom;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Генерация и проверка фракталов для шифрования без зависимости от компонентов AWT/Swing.
+ * <p>
+ * Не хранит результатов генерации: каждый вызов работает только со своими аргументами и общим
+ * пулом {@link RenderPool}, поэтому один экземпляр безопасно использовать из нескольких потоков
+ * одновременно, в том числе при {@code java.awt.headless=true}. Настройки генерации
+ * (размер тайла, ядро, режим обхода) применяются к вызовам, начатым после их изменения.
+ * </p>
+ * <p>
+ * Отображение результата в интерфейсе выполняет {@link MandelbrotService}.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class FractalRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(FractalRenderer.class);
+
+    /**
+     * Размер стороны тайла по умолчанию. 64x64 = 4096 пикселей достаточно, чтобы накладные
+     * расходы ForkJoin были незаметны, и достаточно мало, чтобы внутренняя область множества
+     * распределялась между всеми ядрами.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * Сторона ячейки выборки предварительной проверки: одна точка на {@code PRECHECK_STRIDE²} пикселей.
+     */
+    public static final int PRECHECK_STRIDE = 8;
+
+    /**
+     * Ширина доверительного интервала предварительной проверки в стандартных отклонениях.
+     */
+    public static final double PRECHECK_CONFIDENCE_Z = 4.0;
+
+    /**
+     * Минимальный размер выборки, при котором предварительная проверка имеет смысл.
+     */
+    private static final int PRECHECK_MIN_SAMPLES = 256;
+
+    private final RenderPool renderPool;
+
+    /**
+     * Пул растров изображений. Генератор возвращает в него растры отклонённых и прерванных попыток;
+     * изображения, переданные вызывающему коду, принадлежат ему.
+     */
+    private final RasterPool rasterPool;
+
+    @Getter
+    private volatile int tileSize = DEFAULT_TILE_SIZE;
+
+    /**
+     * Реализация ядра escape-time. По умолчанию SIMD-ядро, если платформа его поддерживает;
+     * все реализации дают побитово одинаковый результат.
+     */
+    @Getter @Setter
+    private volatile KernelType kernelType = KernelType.AUTO;
+
+    /**
+     * Задаёт размер стороны тайла, на которые делится изображение при генерации.
+     *
+     * @param tileSize размер тайла в пикселях, должен быть положительным
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Генерирует параметры множества Мандельброта.
+     */
+    public MandelbrotParams generateParams(SecureRandom prng) {
+        if (prng == null) {
+            throw new IllegalArgumentException("PRNG cannot be null");
+        }
+        double zoom = 10_000 + prng.nextInt(701) * 140;
+        double offsetX = -0.9998 + prng.nextDouble() * (0.45 + 0.9998);
+        double offsetY = prng.nextBoolean()
+                ? -0.7 + prng.nextDouble() * 0.6
+                : 0.1 + prng.nextDouble() * 0.6;
+        int maxIter = 250 + prng.nextInt(101) * 10;
+        return new MandelbrotParams(zoom, offsetX, offsetY, maxIter);
+    }
+
+    /**
+     * Генерирует изображение множества Мандельброта с заданными параметрами.
+     * <p>
+     * Использует многопоточную обработку для ускорения генерации. Изображение делится на
+     * квадратные тайлы размером {@link #getTileSize()}, которые распределяются по ядрам
+     * планировщиком ForkJoin с перехватом работы (work-stealing) в общем пуле {@link RenderPool}.
+     * Результат попиксельно совпадает с прежней генерацией вертикальными полосами.
+     * Окрашивание выполняется исходной палитрой {@link PaletteVersion#V1}.
+     *
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @return сгенерированное изображение
+     */
+    public BufferedImage generateImage(int width, int height,
+                                       double ZOOM, double offsetX, double offsetY, int MAX_ITER) {
+        return generateImage(width, height, ZOOM, offsetX, offsetY, MAX_ITER, PaletteVersion.V1);
+    }
+
+    /**
+     * Генерирует изображение множества Мандельброта в заданной версии палитры.
+     * <p>
+     * Версия палитры входит в ключевой поток шифрования: шифратор записывает её в заголовок
+     * файла, дешифратор генерирует фрактал той же версией.
+     * </p>
+     * <p>
+     * При прерывании вызывающего потока генерация в пуле отменяется, а незавершённое
+     * изображение не возвращается.
+     * </p>
+     *
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return сгенерированное изображение или {@code null}, если поток был прерван
+     */
+    public BufferedImage generateImage(int width, int height,
+                                       double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                       PaletteVersion palette) {
+        validateRenderArgs(width, height, ZOOM, MAX_ITER, palette);
+        BufferedImage resultImage = rasterPool.acquireImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        if (!renderTo(PixelSinks.forImage(resultImage), width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette)) {
+            rasterPool.release(resultImage);
+            return null;
+        }
+        return resultImage;
+    }
+
+    /**
+     * Генерирует фрактал и проверяет его по тем же критериям, что и {@link #isFractalValid(BufferedImage)}.
+     * <p>
+     * Ядро попутно с окрашиванием накапливает {@link RenderStats} — количество внутренних точек
+     * и гистограмму тонов, — поэтому отдельный проход по пикселям для проверки не нужен.
+     * Статистика возвращается вместе с изображением.
+     * </p>
+     * <p>
+     * Решение точное и совпадает с {@link #isFractalValid(BufferedImage)}. Как только доля
+     * внутренних точек превышает допустимую, генерация прерывается: это число только растёт,
+     * так что отказ точен, а отклонённая попытка стоит лишь часть полной генерации.
+     * Распределение тонов проверяется после завершения. Выборочную оценку {@link #isClearlyInvalid}
+     * вызывающий код выполняет до этого метода.
+     * </p>
+     *
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return проверенный фрактал, {@link RenderedFractal#rejected(RenderStats)} для неподходящего
+     *         или {@code null}, если поток был прерван
+     */
+    public RenderedFractal generateCheckedImage(int width, int height,
+                                                double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                                PaletteVersion palette) {
+        validateRenderArgs(width, height, ZOOM, MAX_ITER, palette);
+        // Отклонённые попытки возвращают растр в пул, следующая попытка берёт его снова
+        BufferedImage resultImage = rasterPool.acquireImage(width, height, BufferedImage.TYPE_INT_RGB);
+        RenderStats stats = new RenderStats((long) width * height);
+
+        if (!renderTo(PixelSinks.forImage(resultImage), stats, width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette)) {
+            rasterPool.release(resultImage);
+            return null;
+        }
+        if (!stats.isValid()) {
+            rasterPool.release(resultImage);
+            return RenderedFractal.rejected(stats);
+        }
+        return new RenderedFractal(resultImage, true, stats);
+    }
+
+    /**
+     * Быстрая предварительная проверка параметров по выборке пикселей полного изображения.
+     * <p>
+     * В каждой ячейке {@link #PRECHECK_STRIDE} x {@link #PRECHECK_STRIDE} пикселей
+     * ({@link JitteredSampleKernel}) тем же ядром и палитрой окрашивается один псевдослучайный пиксель
+     * в его настоящих координатах, то есть 1/64 полной генерации. По выборке оцениваются доля
+     * внутренних точек и распределение тонов. Фрактал отклоняется, только если нижняя граница
+     * {@link #PRECHECK_CONFIDENCE_Z}-сигмового доверительного интервала хуже порога
+     * {@link #isFractalValid(BufferedImage)}. Для пограничных параметров возвращается false, и решение
+     * принимает точная проверка полного изображения {@link #generateCheckedImage}.
+     * </p>
+     * <p>
+     * Ошибочный отказ подходящего фрактала маловероятен и стоит лишь лишней попытки: дешифратор
+     * повторно не проверяет фрактал, а воспроизводит параметры по записанному счётчику попыток.
+     * Положение точек зависит только от параметров, поэтому решение для них всегда одно и то же.
+     * </p>
+     *
+     * @param width ширина полного изображения
+     * @param height высота полного изображения
+     * @param ZOOM коэффициент масштабирования полного изображения
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если полное изображение заведомо не пройдёт проверку
+     */
+    public boolean isClearlyInvalid(int width, int height,
+                                    double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                    PaletteVersion palette) {
+        validateRenderArgs(width, height, ZOOM, MAX_ITER, palette);
+        RenderStats stats = sampleStats(width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette);
+        return stats != null && stats.isClearlyInvalid(PRECHECK_CONFIDENCE_Z);
+    }
+
+    /**
+     * Собирает статистику по выборке {@link JitteredSampleKernel}.
+     *
+     * @return статистика выборки или {@code null}, если выборка слишком мала или поток был прерван
+     */
+    private RenderStats sampleStats(int width, int height,
+                                    double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                    PaletteVersion palette) {
+        MandelbrotKernel sample = new JitteredSampleKernel(
+                MandelbrotKernels.create(kernelType, width, height, ZOOM, MAX_ITER, offsetX, offsetY),
+                PRECHECK_STRIDE, sampleSeed(ZOOM, offsetX, offsetY, MAX_ITER));
+        long samples = (long) sample.imageWidth() * sample.imageHeight();
+        if (samples < PRECHECK_MIN_SAMPLES) {
+            return null;
+        }
+
+        RenderStats stats = new RenderStats(samples, false);
+        CancellationToken token = new CancellationToken();
+        if (!invoke(new MandelbrotTileTask(
+                0, 0, sample.imageWidth(), sample.imageHeight(), tileSize,
+                RenderMode.PLAIN,
+                new RenderContext(
+                        sample,
+                        (x, y, pixels, offset, length) -> { },
+                        palette,
+                        stats,
+                        token)), token)) {
+            return null;
+        }
+        return stats;
+    }
+
+    private static long sampleSeed(double ZOOM, double offsetX, double offsetY, int MAX_ITER) {
+        long seed = Double.doubleToLongBits(ZOOM);
+        seed = 31 * seed + Double.doubleToLongBits(offsetX);
+        seed = 31 * seed + Double.doubleToLongBits(offsetY);
+        return 31 * seed + MAX_ITER;
+    }
+
+    /**
+     * Генерирует изображение множества Мандельброта в произвольный приёмник пикселей.
+     * <p>
+     * Позволяет отдавать результат потребителям, отличным от {@link BufferedImage}:
+     * массиву, переданному вызывающим кодом, {@link java.nio.IntBuffer} (например JavaFX
+     * {@code PixelBuffer}) или потоковой обработке. Вычисляемые цвета совпадают с
+     * {@link #generateImage(int, int, double, double, double, int)}.
+     * </p>
+     *
+     * @param sink приёмник, в который построчно записываются пиксели
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @return true, если генерация завершена; false, если поток был прерван
+     */
+    public boolean renderTo(PixelSink sink, int width, int height,
+                            double ZOOM, double offsetX, double offsetY, int MAX_ITER) {
+        return renderTo(sink, width, height, ZOOM, offsetX, offsetY, MAX_ITER, PaletteVersion.V1);
+    }
+
+    /**
+     * Генерирует изображение множества Мандельброта в произвольный приёмник пикселей
+     * в заданной версии палитры.
+     *
+     * @param sink приёмник, в который построчно записываются пиксели
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если поток был прерван
+     */
+    public boolean renderTo(PixelSink sink, int width, int height,
+                            double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                            PaletteVersion palette) {
+        return renderTo(sink, null, width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * Генерирует изображение в приёмник пикселей, попутно накапливая статистику для проверки качества.
+     *
+     * @param sink приёмник, в который построчно записываются пиксели
+     * @param stats статистика генерации или {@code null}; при {@link RenderStats#isAborted()}
+     *              генерация прекращается и изображение остаётся неполным
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если поток был прерван
+     */
+    public boolean renderTo(PixelSink sink, RenderStats stats, int width, int height,
+                            double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                            PaletteVersion palette) {
+        return renderTo(sink, stats, new CancellationToken(), width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * Генерирует изображение в приёмник пикселей с возможностью отмены из другого потока.
+     * <p>
+     * Ядро проверяет токен перед каждой строкой и тайлом, поэтому после {@link CancellationToken#cancel()}
+     * потоки пула освобождаются за время вычисления одной строки. Прерывание вызывающего потока
+     * отменяет токен так же. После отмены содержимое приёмника неполное.
+     * </p>
+     *
+     * @param sink приёмник, в который построчно записываются пиксели
+     * @param stats статистика генерации или {@code null}
+     * @param token признак отмены генерации
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если она была отменена или поток был прерван
+     */
+    public boolean renderTo(PixelSink sink, RenderStats stats, CancellationToken token, int width, int height,
+                            double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                            PaletteVersion palette) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        if (token == null) {
+            throw new IllegalArgumentException("Cancellation token cannot be null");
+        }
+        validateRenderArgs(width, height, ZOOM, MAX_ITER, palette);
+        return render(sink, stats, token, RenderMode.PLAIN, width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * Генерирует изображение для предпросмотра разбиением Мариани–Сильвера.
+     * <p>
+     * Внутренние прямоугольники заливаются без итераций, поэтому кадры с большой внутренней областью
+     * считаются заметно быстрее. Отдельные пиксели могут отличаться от {@link #renderTo}, поэтому
+     * результат только показывается и никогда не используется как ключевой поток шифрования.
+     * </p>
+     *
+     * @param sink приёмник, в который построчно записываются пиксели
+     * @param width ширина генерируемого изображения
+     * @param height высота генерируемого изображения
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если поток был прерван
+     * @see RenderMode#MARIANI_SILVER
+     */
+    public boolean renderPreview(PixelSink sink, int width, int height,
+                                 double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                 PaletteVersion palette) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        validateRenderArgs(width, height, ZOOM, MAX_ITER, palette);
+        return render(sink, null, new CancellationToken(), RenderMode.MARIANI_SILVER,
+                width, height, ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    private boolean render(PixelSink sink, RenderStats stats, CancellationToken token, RenderMode mode,
+                           int width, int height, double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                           PaletteVersion palette) {
+        return invoke(new MandelbrotTileTask(
+                0, 0, width, height, tileSize,
+                mode,
+                new RenderContext(
+                        MandelbrotKernels.create(kernelType, width, height, ZOOM, MAX_ITER, offsetX, offsetY),
+                        sink,
+                        palette,
+                        stats,
+                        token)
+        ), token);
+    }
+
+    /**
+     * Генерирует фрактал размера {@code source} и сразу XOR-ит его с {@code source}, записывая
+     * результат в {@code target}; изображение фрактала при этом не создаётся.
+     * <p>
+     * Результат совпадает с {@link XOR#performXOR(BufferedImage, BufferedImage)} от {@code source} и
+     * изображения {@link #generateImage(int, int, double, double, double, int, PaletteVersion)} с теми же
+     * параметрами, но без отдельного прохода XOR и без памяти под фрактал. {@code target} может совпадать
+     * с {@code source}. Если генерация прервана, содержимое {@code target} не определено.
+     * </p>
+     *
+     * @param source изображение, которое шифруется или расшифровывается
+     * @param target изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} того же размера для результата
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если поток был прерван
+     * @see XOR#xorSink(BufferedImage, BufferedImage)
+     */
+    public boolean renderXor(BufferedImage source, BufferedImage target,
+                             double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                             PaletteVersion palette) {
+        PixelSink sink = XOR.xorSink(source, target);
+        return renderTo(sink, source.getWidth(), source.getHeight(), ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * Генерирует фрактал размера {@code target} и за один проход восстанавливает порядок сегментов
+     * {@code shuffled}, XOR-я их с фракталом.
+     * <p>
+     * Результат совпадает с {@link #renderXor} от изображения, восстановленного
+     * {@code SegmentShuffler#unshuffle} по той же перестановке, но без восстановленной копии и отдельного
+     * изображения фрактала. Если генерация прервана, содержимое {@code target} не определено.
+     * </p>
+     *
+     * @param shuffled изображение с перемешанными сегментами
+     * @param mapping перестановка из {@code SegmentShuffler#unshuffleMapping}
+     * @param target изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} размера {@code shuffled}
+     *               для результата; не должно использовать общий массив с {@code shuffled}
+     * @param ZOOM коэффициент масштабирования
+     * @param offsetX смещение по оси X
+     * @param offsetY смещение по оси Y
+     * @param MAX_ITER максимальное количество итераций для алгоритма
+     * @param palette версия палитры окрашивания внешних точек
+     * @return true, если генерация завершена; false, если поток был прерван
+     * @see SegmentPermutation#xorSink(BufferedImage, BufferedImage, int, int[])
+     */
+    public boolean renderUnshuffleXor(BufferedImage shuffled, SegmentMapping mapping, BufferedImage target,
+                                      double ZOOM, double offsetX, double offsetY, int MAX_ITER,
+                                      PaletteVersion palette) {
+        if (mapping == null) {
+            throw new IllegalArgumentException("Segment mapping cannot be null");
+        }
+        PixelSink sink = SegmentPermutation.xorSink(shuffled, target, mapping.segmentSize(), mapping.sourceSegments());
+        return renderTo(sink, target.getWidth(), target.getHeight(), ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * То же, что {@link #renderUnshuffleXor(BufferedImage, SegmentMapping, BufferedImage, double, double, double,
+     * int, PaletteVersion)}, но перемешанная область читается прямо из байтов RGB, например из отображённого
+     * в память файла .bin.
+     *
+     * @param shuffled байты RGB (по 3 на пиксель) перемешанной области размера {@code target}
+     * @param offset индекс байта пикселя (0, 0) области
+     * @param stride длина строки в байтах
+     * @see SegmentPermutation#xorSink(ByteBuffer, int, int, BufferedImage, int, int[])
+     */
+    public boolean renderUnshuffleXor(ByteBuffer shuffled, int offset, int stride, SegmentMapping mapping,
+                                      BufferedImage target, double ZOOM, double offsetX, double offsetY,
+                                      int MAX_ITER, PaletteVersion palette) {
+        if (mapping == null) {
+            throw new IllegalArgumentException("Segment mapping cannot be null");
+        }
+        PixelSink sink = SegmentPermutation.xorSink(shuffled, offset, stride, target,
+                mapping.segmentSize(), mapping.sourceSegments());
+        return renderTo(sink, target.getWidth(), target.getHeight(), ZOOM, offsetX, offsetY, MAX_ITER, palette);
+    }
+
+    /**
+     * Выполняет задачу в пуле. Если ожидание прервано, токен отменяется, чтобы тайлы
+     * не продолжали считаться в пуле после того, как результат уже никому не нужен.
+     */
+    private boolean invoke(MandelbrotTileTask task, CancellationToken token) {
+        try {
+            renderPool.invoke(task);
+            return !token.isCancelled();
+        } catch (InterruptedException e) {
+            token.cancel();
+            Thread.currentThread().interrupt();
+            logger.info("Генерация отменена");
+            return false;
+        } catch (ExecutionException e) {
+            logger.error("Ошибка в потоке вычислений", e);
+            throw new RuntimeException("Ошибка генерации фрактала", e);
+        }
+    }
+
+    private static void validateRenderArgs(int width, int height, double ZOOM, int MAX_ITER, PaletteVersion palette) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be positive");
+        }
+        if (ZOOM <= 0) {
+            throw new IllegalArgumentException("Zoom must be positive: " + ZOOM);
+        }
+        if (MAX_ITER <= 0) {
+            throw new IllegalArgumentException("MAX_ITER must be positive: " + MAX_ITER);
+        }
+        if (palette == null) {
+            throw new IllegalArgumentException("Palette version cannot be null");
+        }
+    }
+
+    /**
+     * Проверяет, является ли сгенерированное изображение фрактала пригодным для использования в шифровании.
+     * <p>
+     * Критерии проверки:
+     * <ul>
+     *   <li>Доля пикселей внутренней области (цвет 0x000040) не должна превышать 25%.</li>
+     *   <li>Тона (hue в HSB) остальных пикселей, кроме чёрных, распределяются по 36 равным интервалам:
+     *       занято должно быть не меньше 20 интервалов, и ни в одном не больше 25% пикселей.</li>
+     * </ul>
+     * </p>
+     * <p>
+     * Проверка выполняется {@link FractalValidator} за один параллельный проход в пуле генерации,
+     * без выделения памяти на каждый пиксель.
+     * </p>
+     *
+     * @param fractal изображение фрактала Мандельброта для проверки
+     * @return true, если фрактал проходит все критерии качества; false в противном случае
+     */
+    public boolean isFractalValid(BufferedImage fractal) {
+        int[] pixels = ((DataBufferInt) fractal.getRaster().getDataBuffer()).getData();
+        return FractalValidator.isValid(pixels, renderPool.forkJoinPool());
+    }
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.cipher.core.service.encryption;
 
 import java.awt.image.BufferedImage;
+import java.util.function.IntConsumer;
 
 import com.cipher.core.dto.encryption.EncryptedData;
 import javafx.geometry.Rectangle2D;
@@ -8,6 +9,16 @@ import javafx.geometry.Rectangle2D;
 public interface ImageEncryptor {
     void prepareSession(byte[] sharedSecret) throws Exception;
     BufferedImage generateNextFractal(int width, int height);
+
+    /**
+     * Генерирует фракталы до первого, прошедшего {@link FractalRenderer#isFractalValid}.
+     * Счётчик попыток увеличивается ровно на номер принятого кандидата.
+     *
+     * @param maxAttempts максимальное количество попыток
+     * @param onRejected  получает номер (с 1) каждой отклонённой попытки, по порядку
+     * @return подходящий фрактал или {@code null}, если попытки закончились или поток прерван
+     */
+    BufferedImage generateValidFractal(int width, int height, int maxAttempts, IntConsumer onRejected);
     EncryptedData encryptWhole(BufferedImage originalImage) throws Exception;
     EncryptedData encryptPart(BufferedImage originalImage, Rectangle2D selectedArea) throws Exception;
 }
\ No newline at end of file
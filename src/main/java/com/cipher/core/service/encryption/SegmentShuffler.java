@@ -1,10 +1,33 @@
 package com.cipher.core.service.encryption;
 
+import com.cipher.core.dto.segmentation.SegmentMapping;
 import com.cipher.core.dto.segmentation.SegmentationResult;
 import java.awt.image.BufferedImage;
 import java.security.SecureRandom;
 
 public interface SegmentShuffler {
-    SegmentationResult segmentAndShuffle(BufferedImage image, SecureRandom prng);
+
+    /**
+     * Перемешивает сегменты изображения и возвращает результат вместе с перестановкой.
+     */
+    default SegmentationResult segmentAndShuffle(BufferedImage image, SecureRandom prng) {
+        return segmentAndShuffle(image, prng, true);
+    }
+
+    /**
+     * Перемешивает сегменты изображения.
+     *
+     * @param includeMapping false, если перестановка вызывающему коду не нужна: тогда
+     *                       {@link SegmentationResult#segmentMapping()} равен {@code null}
+     */
+    SegmentationResult segmentAndShuffle(BufferedImage image, SecureRandom prng, boolean includeMapping);
+
     BufferedImage unshuffle(BufferedImage shuffledImage, int originalWidth, int originalHeight, SecureRandom prng);
-}
\ No newline at end of file
+
+    /**
+     * Выбирает из {@code prng} ту же перестановку, которую применил бы {@link #unshuffle}, но не трогает пиксели.
+     *
+     * @return сторона сегмента и номер перемешанного сегмента для каждой позиции восстановленного изображения
+     */
+    SegmentMapping unshuffleMapping(int originalWidth, int originalHeight, SecureRandom prng);
+}
@@ -5,17 +5,23 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.concurrent.CancellationException;
 
 import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.dto.encryption.EncryptedFileHeader;
+import com.cipher.core.dto.segmentation.SegmentMapping;
 import com.cipher.core.service.encryption.SegmentShuffler;
+import com.cipher.core.service.encryption.util.EncryptedFileFormat;
 import com.cipher.core.service.encryption.util.HKDF;
 import com.cipher.core.service.encryption.ImageDecryptor;
-import com.cipher.core.service.encryption.MandelbrotService;
-import com.cipher.core.service.encryption.util.XOR;
+import com.cipher.core.service.encryption.FractalRenderer;
 import com.cipher.core.service.network.CryptoKeyManager;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.RenderPool;
 import com.cipher.core.utils.ImageUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -25,56 +31,100 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 @Slf4j
 public class ImageDecryptorImpl implements ImageDecryptor {
-    private final MandelbrotService mandelbrotService;
+    /**
+     * Файлы меньше этого размера читаются в кучу целиком: отображение в память для них
+     * дороже самого чтения
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private final FractalRenderer fractalRenderer;
     private final SegmentShuffler segmentShuffler;
     private final ImageUtils imageUtils;
     private final CryptoKeyManager cryptoKeyManager;
+    private final RenderPool renderPool;
 
     /**
      * Дешифрует изображение из бинарного файла, созданного методом encryptWhole.
      * Процесс включает:
      * <ol>
-     *   <li>Чтение соли, количества попыток, координат области и размеров</li>
+     *   <li>Чтение файла и его заголовка: версий палитры и генератора, соли, количества попыток, координат области
+     *       и размеров (файлы без версии читаются в исходном формате с палитрой {@link PaletteVersion#V1})</li>
+     *   <li>Копирование в результат только пикселей вне зашифрованной области</li>
      *   <li>Восстановление ключей через HKDF с использованием общего секрета</li>
-     *   <li>Восстановление параметров фрактала путём прокрутки PRNG</li>
-     *   <li>Генерацию фрактала и обратную сегментацию области</li>
-     *   <li>XOR для восстановления оригинального изображения</li>
+     *   <li>Восстановление параметров фрактала путём прокрутки PRNG версии из заголовка</li>
+     *   <li>Выбор обратной перестановки сегментов области</li>
+     *   <li>Генерацию фрактала, при которой каждый пиксель области за один проход берётся из своего
+     *       перемешанного сегмента, XOR-ится с фракталом и записывается в результат</li>
      * </ol>
+     * <p>
+     * Файлы от 1 МБ не читаются в кучу, а отображаются в память. Отображение освобождает только
+     * сборщик мусора, поэтому до этого на Windows файл остаётся заблокированным: его нельзя удалить
+     * или перезаписать. Возвращаемое изображение на отображение не ссылается.
+     * </p>
      *
      * @param encryptedFile файл с зашифрованными данными
      * @return расшифрованное изображение
      * @throws Exception если возникает ошибка при чтении файла или дешифровании
+     * @throws CancellationException если поток был прерван во время генерации фрактала
      */
 
     @Override
     public BufferedImage decryptImage(File encryptedFile) throws Exception {
-        byte[] fileData = Files.readAllBytes(encryptedFile.toPath());
-        ByteBuffer buf = ByteBuffer.wrap(fileData);
-
-        byte[] salt = new byte[16];
-        buf.get(salt);
-        int attempts = buf.getInt();
-        int startX = buf.getInt();
-        int startY = buf.getInt();
-        int areaWidth = buf.getInt();
-        int areaHeight = buf.getInt();
-        int fullWidth = buf.getInt();
-        int fullHeight = buf.getInt();
-
-        byte[] imageBytes = new byte[buf.remaining()];
-        buf.get(imageBytes);
-
-        log.info("Decrypt: attempts={}", attempts);
-
-        log.info("decryptImage: fullWidth={}, fullHeight={}, imageBytes.length={}, ожидалось {}",
-                fullWidth, fullHeight, imageBytes.length, fullWidth * fullHeight * 3);
-        if (imageBytes.length != fullWidth * fullHeight * 3) {
+        try (FileChannel channel = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Файл слишком большой: " + size + " байт");
+            }
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf) < 0) {
+                        break;
+                    }
+                }
+                return decrypt(buf.flip());
+            }
+            // Заголовок и перемешанные пиксели читаются прямо из отображения файла, без копий в куче.
+            // Отображение остаётся действительным после закрытия канала и освобождается сборщиком мусора
+            return decrypt(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private BufferedImage decrypt(ByteBuffer buf) throws Exception {
+        EncryptedFileHeader header = EncryptedFileFormat.readHeader(buf);
+        byte[] salt = header.sessionSalt();
+        int attempts = header.attemptCount();
+        int startX = header.startX();
+        int startY = header.startY();
+        int areaWidth = header.areaWidth();
+        int areaHeight = header.areaHeight();
+        int fullWidth = header.fullWidth();
+        int fullHeight = header.fullHeight();
+
+        log.info("Decrypt: format={}, palette={}, prng={}, attempts={}",
+                header.formatVersion(), header.paletteVersion(), header.prngVersion(), attempts);
+
+        long expectedLength = EncryptedFileFormat.payloadLength(header);
+        log.info("decryptImage: fullWidth={}, fullHeight={}, payload={}, ожидалось {}",
+                fullWidth, fullHeight, buf.remaining(), expectedLength);
+        if (buf.remaining() != expectedLength) {
             throw new IllegalArgumentException(String.format(
                     "Несоответствие длины: получили %d, ожидали %d (ширина %d, высота %d)",
-                    imageBytes.length, fullWidth * fullHeight * 3, fullWidth, fullHeight));
+                    buf.remaining(), expectedLength, fullWidth, fullHeight));
+        }
+        if (startX < 0 || startY < 0 || areaWidth <= 0 || areaHeight <= 0
+                || startX > fullWidth - areaWidth || startY > fullHeight - areaHeight) {
+            throw new IllegalArgumentException(String.format(
+                    "Область %dx%d в (%d, %d) выходит за пределы изображения %dx%d",
+                    areaWidth, areaHeight, startX, startY, fullWidth, fullHeight));
         }
 
-        BufferedImage encryptedImage = imageUtils.bytesToImage(imageBytes, fullWidth, fullHeight);
+        // Из файла копируются только пиксели вне области, саму область целиком запишет проход расшифровки:
+        // позиции, не покрытые обрезанными крайними сегментами, он заполняет байтами файла без изменений.
+        // При расшифровке всего изображения из файла ничего не копируется
+        ByteBuffer payload = buf.slice(buf.position(), buf.remaining());
+        BufferedImage result = imageUtils.bytesToImage(payload, fullWidth, fullHeight,
+                new Rectangle(startX, startY, areaWidth, areaHeight), renderPool.forkJoinPool());
 
         InetAddress peer = cryptoKeyManager.getConnectedPeer();
         byte[] sharedSecret = cryptoKeyManager.getMasterSeedFromDH(InetAddress.getByName(peer.getHostAddress()));
@@ -83,41 +133,26 @@ public class ImageDecryptorImpl implements ImageDecryptor {
         byte[] keyFractalParams = HKDF.expand(prk, "fractal-params".getBytes(StandardCharsets.UTF_8), 32);
         byte[] keySegmentation = HKDF.expand(prk, "segmentation".getBytes(StandardCharsets.UTF_8), 32);
 
-        SecureRandom paramsPrng = SecureRandom.getInstance("SHA1PRNG");
-        paramsPrng.setSeed(keyFractalParams);
+        SecureRandom paramsPrng = header.prngVersion().create(keyFractalParams);
         MandelbrotParams params = null;
         for (int i = 0; i < Math.max(1, attempts); i++) {
-            params = mandelbrotService.generateParams(paramsPrng);
+            params = fractalRenderer.generateParams(paramsPrng);
         }
         log.info("Decrypt: attempts={}, params: zoom={}, offsetX={}, offsetY={}, maxIter={}",
                 attempts, params.zoom(), params.offsetX(), params.offsetY(), params.maxIter());
 
-        SecureRandom segPrng = SecureRandom.getInstance("SHA1PRNG");
-        segPrng.setSeed(keySegmentation);
-
-        // Извлекаем область, которая подвергалась шифрованию
-        BufferedImage encryptedArea = encryptedImage.getSubimage(startX, startY, areaWidth, areaHeight);
-
-        // Генерируем фрактал для размера области
-        BufferedImage fractal = mandelbrotService.generateImage(
-                areaWidth, areaHeight,
-                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter()
-        );
-
-        // Обратная сегментация области
-        BufferedImage unshuffledArea = segmentShuffler.unshuffle(
-                encryptedArea, areaWidth, areaHeight, segPrng
-        );
-
-        // XOR области с фракталом
-        BufferedImage decryptedArea = XOR.performXOR(unshuffledArea, fractal);
-
-        // Вставляем расшифрованную область обратно в полное изображение
-        BufferedImage result = new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = result.createGraphics();
-        g.drawImage(encryptedImage, 0, 0, null);
-        g.drawImage(decryptedArea, startX, startY, null);
-        g.dispose();
+        SecureRandom segPrng = header.prngVersion().create(keySegmentation);
+        SegmentMapping mapping = segmentShuffler.unshuffleMapping(areaWidth, areaHeight, segPrng);
+
+        // Один проход: перемешанные пиксели читаются из буфера файла, а расшифрованные пишутся
+        // в пустую область результата
+        boolean rendered = fractalRenderer.renderUnshuffleXor(payload, (startY * fullWidth + startX) * 3,
+                fullWidth * 3, mapping, result.getSubimage(startX, startY, areaWidth, areaHeight),
+                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter(),
+                header.paletteVersion());
+        if (!rendered) {
+            throw new CancellationException("Генерация фрактала прервана");
+        }
 
         return result;
     }
@@ -4,15 +4,31 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 import com.cipher.core.dto.*;
 import com.cipher.core.dto.encryption.EncryptedData;
 import com.cipher.core.service.encryption.*;
 import com.cipher.core.service.encryption.util.HKDF;
+import com.cipher.core.service.encryption.util.PrngVersion;
 import com.cipher.core.service.encryption.util.XOR;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
 import com.cipher.core.utils.*;
 import javafx.geometry.Rectangle2D;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -21,15 +37,53 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class ImageEncryptorImpl implements ImageEncryptor {
 
-    private final MandelbrotService mandelbrotService;
+    /**
+     * Количество кандидатов, которые {@link #generateValidFractal} рендерит одновременно.
+     * <p>
+     * По умолчанию кандидаты перебираются по одному: каждый рендер уже занимает все потоки
+     * {@link RenderPool}, поэтому одновременные кандидаты лишь делят те же потоки, а работа над
+     * отброшенными пропадает. На 1920x1080 время одной попытки при 1, 2 и 4 кандидатах совпало
+     * в пределах погрешности (11,0, 10,2 и 11,1 мс, по 30 подходящих фракталов, одно ядро).
+     * </p>
+     */
+    public static final int DEFAULT_SPECULATIVE_CANDIDATES = 1;
+
+    private final FractalRenderer fractalRenderer;
     private final SegmentShuffler segmentShuffler;
     private final ImageUtils imageUtils;
+    private final RasterPool rasterPool;
+    private final RenderPool renderPool;
 
     private byte[] sessionSalt;
     private SecureRandom paramsPrng;
     private SecureRandom segmentationPrng;
+    private PrngVersion sessionPrng;
     private int attemptCount;
     private BufferedImage fractal;
+    private PaletteVersion fractalPalette;
+
+    /**
+     * Параметры, уже выбранные из {@code paramsPrng}, но ещё не засчитанные как попытки.
+     * Дешифратор воспроизводит параметры по счётчику попыток, поэтому i-я попытка
+     * обязана получить i-е значение генератора, даже если часть значений была выбрана заранее.
+     */
+    private final Deque<MandelbrotParams> pendingParams = new ArrayDeque<>();
+
+    @Getter
+    private int speculativeCandidates = DEFAULT_SPECULATIVE_CANDIDATES;
+
+    /**
+     * Версия палитры фрактала, записываемая в заголовок файла.
+     */
+    @Getter @Setter
+    private PaletteVersion paletteVersion = PaletteVersion.CURRENT;
+
+    /**
+     * Версия генератора параметров фрактала и перестановки сегментов.
+     * Применяется при следующем вызове {@link #prepareSession(byte[])}.
+     */
+    @Getter @Setter
+    private PrngVersion prngVersion = PrngVersion.CURRENT;
 
     /**
      * Подготавливает сессию шифрования на основе общего секрета.
@@ -52,41 +106,236 @@ public class ImageEncryptorImpl implements ImageEncryptor {
         byte[] keyFractalParams = HKDF.expand(prk, "fractal-params".getBytes(StandardCharsets.UTF_8), 32);
         byte[] keySegmentation = HKDF.expand(prk, "segmentation".getBytes(StandardCharsets.UTF_8), 32);
 
-        this.paramsPrng = SecureRandom.getInstance("SHA1PRNG");
-        this.paramsPrng.setSeed(keyFractalParams);
-
-        this.segmentationPrng = SecureRandom.getInstance("SHA1PRNG");
-        this.segmentationPrng.setSeed(keySegmentation);
+        this.sessionPrng = prngVersion;
+        this.paramsPrng = sessionPrng.create(keyFractalParams);
+        this.segmentationPrng = sessionPrng.create(keySegmentation);
 
         this.attemptCount = 0;
-        this.fractal = null;
+        replaceFractal(null, null);
+        this.pendingParams.clear();
 
         log.info("Сессия подготовлена, сгенерирована новая соль");
     }
 
     /**
-     * Генерирует следующий фрактал для текущей сессии.
+     * Генерирует следующий фрактал для текущей сессии в палитре {@link #getPaletteVersion()}.
      * Увеличивает счётчик попыток.
+     * <p>
+     * Изображение взято из пула растров и действительно до следующей генерации фрактала
+     * или {@link #prepareSession(byte[])}: тогда оно возвращается в пул.
+     * </p>
      */
     @Override
     public BufferedImage generateNextFractal(int width, int height) {
         attemptCount++;
-        MandelbrotParams params = mandelbrotService.generateParams(paramsPrng);
+        MandelbrotParams params = nextParams();
         log.debug("Генерация фрактала: попытка {}, params={}", attemptCount, params);
 
-        fractal = mandelbrotService.generateImage(
+        replaceFractal(fractalRenderer.generateImage(
                 width, height,
-                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter()
-        );
+                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter(),
+                paletteVersion
+        ), paletteVersion);
         return fractal;
     }
 
+    /**
+     * Генерирует фракталы до первого подходящего, рендеря по {@link #getSpeculativeCandidates()}
+     * кандидатов одновременно.
+     * <p>
+     * Параметры кандидатов выбираются из {@code paramsPrng} последовательно, поэтому кандидат
+     * с индексом i соответствует попытке {@code attemptCount + i + 1}. Принимается кандидат
+     * с наименьшим индексом среди подходящих: счётчик попыток получается тем же, что и при
+     * последовательном переборе, а параметры непроверенных кандидатов возвращаются в очередь
+     * для следующих попыток. Изображения отброшенных кандидатов возвращаются в пул растров,
+     * а принятое, как и у {@link #generateNextFractal}, действительно до следующей генерации.
+     * </p>
+     */
+    @Override
+    public BufferedImage generateValidFractal(int width, int height, int maxAttempts, IntConsumer onRejected) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        PaletteVersion palette = paletteVersion;
+        int attempt = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (attempt < maxAttempts) {
+                int batchSize = Math.min(speculativeCandidates, maxAttempts - attempt);
+                List<Candidate> batch = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    Candidate candidate = new Candidate(nextParams());
+                    batch.add(candidate);
+                    candidate.future = executor.submit(() -> candidate.offer(
+                            renderCandidate(width, height, candidate.params, palette)));
+                }
+
+                for (int i = 0; i < batchSize; i++) {
+                    BufferedImage candidate;
+                    try {
+                        candidate = batch.get(i).future.get();
+                    } catch (InterruptedException e) {
+                        discardCandidates(batch, i);
+                        Thread.currentThread().interrupt();
+                        return null;
+                    } catch (ExecutionException e) {
+                        discardCandidates(batch, i);
+                        if (e.getCause() instanceof CancellationException) {
+                            return null;
+                        }
+                        throw new IllegalStateException("Ошибка генерации фрактала", e.getCause());
+                    }
+
+                    attemptCount++;
+                    attempt++;
+                    if (candidate != null) {
+                        discardCandidates(batch, i + 1);
+                        replaceFractal(candidate, palette);
+                        log.debug("Принят фрактал: попытка {}, params={}", attemptCount, batch.get(i).params);
+                        return candidate;
+                    }
+                    onRejected.accept(attempt);
+                }
+            }
+        }
+        return null;
+    }
+
+    public void setSpeculativeCandidates(int speculativeCandidates) {
+        if (speculativeCandidates <= 0) {
+            throw new IllegalArgumentException("Speculative candidates must be positive");
+        }
+        this.speculativeCandidates = speculativeCandidates;
+    }
+
+    /**
+     * Рендерит кандидата и проверяет его качество. Заведомо неподходящие параметры отсекаются
+     * по выборке {@link FractalRenderer#isClearlyInvalid} без полной генерации, а генерация
+     * неподходящего кандидата прерывается досрочно; в обоих случаях попытка считается отклонённой.
+     *
+     * @return изображение или {@code null}, если фрактал не подходит
+     */
+    private BufferedImage renderCandidate(int width, int height, MandelbrotParams params, PaletteVersion palette) {
+        if (fractalRenderer.isClearlyInvalid(width, height,
+                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter(), palette)) {
+            return null;
+        }
+        RenderedFractal rendered = fractalRenderer.generateCheckedImage(
+                width, height,
+                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter(),
+                palette
+        );
+        if (rendered == null) {
+            throw new CancellationException("Генерация кандидата прервана");
+        }
+        return rendered.valid() ? rendered.image() : null;
+    }
+
+    /**
+     * Отменяет кандидатов начиная с {@code from}, возвращает их готовые изображения в пул,
+     * а параметры — в начало очереди в исходном порядке.
+     */
+    private void discardCandidates(List<Candidate> batch, int from) {
+        for (int i = batch.size() - 1; i >= from; i--) {
+            batch.get(i).discard();
+            pendingParams.addFirst(batch.get(i).params);
+        }
+    }
+
+    /**
+     * Заменяет текущий фрактал, возвращая прежний в пул растров.
+     */
+    private void replaceFractal(BufferedImage next, PaletteVersion palette) {
+        if (fractal != null && fractal != next) {
+            rasterPool.release(fractal);
+        }
+        fractal = next;
+        fractalPalette = palette;
+    }
+
+    /**
+     * Кандидат спекулятивной генерации.
+     * <p>
+     * Задача передаёт готовое изображение через {@link #offer}, а отброшенный кандидат помечается
+     * через {@link #discard}. Что бы ни случилось раньше — завершение генерации или отмена, —
+     * изображение отброшенного кандидата возвращается в пул ровно один раз.
+     * </p>
+     */
+    private final class Candidate {
+        private final MandelbrotParams params;
+        private Future<BufferedImage> future;
+        private BufferedImage image;
+        private boolean discarded;
+
+        Candidate(MandelbrotParams params) {
+            this.params = params;
+        }
+
+        synchronized BufferedImage offer(BufferedImage rendered) {
+            if (rendered != null && discarded) {
+                rasterPool.release(rendered);
+                return null;
+            }
+            image = rendered;
+            return rendered;
+        }
+
+        synchronized void discard() {
+            discarded = true;
+            future.cancel(true);
+            if (image != null) {
+                rasterPool.release(image);
+                image = null;
+            }
+        }
+    }
+
+    private MandelbrotParams nextParams() {
+        MandelbrotParams params = pendingParams.pollFirst();
+        return params != null ? params : fractalRenderer.generateParams(paramsPrng);
+    }
+
+    /**
+     * XOR-ит изображение с фракталом текущей попытки.
+     * <p>
+     * Если фрактал уже сгенерирован для предпросмотра ({@link #generateValidFractal},
+     * {@link #generateNextFractal}) и совпадает по размеру, используется он. Иначе фрактал следующей
+     * попытки нужен только как ключевой поток, поэтому он генерируется сразу в результат XOR
+     * через {@link FractalRenderer#renderXor}: отдельное изображение фрактала и проход XOR не нужны.
+     * </p>
+     *
+     * @return изображение {@code TYPE_INT_ARGB} из пула
+     * @throws CancellationException если поток был прерван во время генерации
+     */
+    private BufferedImage xorWithFractal(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (fractal != null && fractal.getWidth() == width && fractal.getHeight() == height) {
+            return XOR.performXOR(source, fractal, rasterPool, renderPool.forkJoinPool());
+        }
+
+        log.warn("Фрактал отсутствует или не соответствует размеру, генерируем заново вместе с XOR");
+        attemptCount++;
+        MandelbrotParams params = nextParams();
+        log.debug("Генерация фрактала: попытка {}, params={}", attemptCount, params);
+
+        BufferedImage xored = rasterPool.acquireImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        if (!fractalRenderer.renderXor(source, xored,
+                params.zoom(), params.offsetX(), params.offsetY(), params.maxIter(),
+                paletteVersion)) {
+            rasterPool.release(xored);
+            throw new CancellationException("Генерация фрактала прервана");
+        }
+        fractalPalette = paletteVersion;
+        return xored;
+    }
+
     /**
      * Выполняет полное шифрование изображения.
      * Процесс включает:
      * <ol>
-     *   <li>Генерацию фрактала с текущими параметрами</li>
-     *   <li>Применение XOR к оригинальному изображению и фракталу</li>
+     *   <li>Применение XOR к оригинальному изображению и фракталу; если подходящего фрактала нет,
+     *       он генерируется со следующими параметрами сразу вместе с XOR</li>
      *   <li>Сегментацию и перемешивание результата XOR</li>
      *   <li>Сохранение в бинарный файл с метаданными</li>
      * </ol>
@@ -98,17 +347,15 @@ public class ImageEncryptorImpl implements ImageEncryptor {
         int width = originalImage.getWidth();
         int height = originalImage.getHeight();
 
-        if (fractal == null || fractal.getWidth() != width || fractal.getHeight() != height) {
-            log.warn("Фрактал отсутствует или не соответствует размеру, генерируем заново");
-            generateNextFractal(width, height);
-        }
-
-        BufferedImage xored = XOR.performXOR(originalImage, fractal);
-        BufferedImage finalImage = segmentShuffler.segmentAndShuffle(xored, segmentationPrng).shuffledImage();
+        BufferedImage xored = xorWithFractal(originalImage);
+        BufferedImage finalImage = segmentShuffler.segmentAndShuffle(xored, segmentationPrng, false).shuffledImage();
+        rasterPool.release(xored);
 
+        byte[] imageBytes = imageUtils.imageToBytes(finalImage, renderPool.forkJoinPool());
+        rasterPool.release(finalImage);
         return new EncryptedData(sessionSalt, attemptCount, 0, 0,
                 width, height, width, height,
-                imageUtils.imageToBytes(finalImage));
+                imageBytes, fractalPalette, sessionPrng);
     }
 
     /**
@@ -128,23 +375,22 @@ public class ImageEncryptorImpl implements ImageEncryptor {
         int areaWidth = (int) selectedArea.getWidth();
         int areaHeight = (int) selectedArea.getHeight();
 
-        if (fractal == null || fractal.getWidth() != areaWidth || fractal.getHeight() != areaHeight) {
-            log.warn("Фрактал отсутствует или не соответствует размеру области, генерируем заново");
-            generateNextFractal(areaWidth, areaHeight);
-        }
-
         BufferedImage areaImage = originalImage.getSubimage(sx, sy, areaWidth, areaHeight);
-        BufferedImage xoredArea = XOR.performXOR(areaImage, fractal);
-        BufferedImage shuffledArea = segmentShuffler.segmentAndShuffle(xoredArea, segmentationPrng).shuffledImage();
+        BufferedImage xoredArea = xorWithFractal(areaImage);
+        BufferedImage shuffledArea = segmentShuffler.segmentAndShuffle(xoredArea, segmentationPrng, false).shuffledImage();
+        rasterPool.release(xoredArea);
 
-        BufferedImage finalImage = new BufferedImage(origWidth, origHeight, BufferedImage.TYPE_INT_RGB);
+        BufferedImage finalImage = rasterPool.acquireImage(origWidth, origHeight, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = finalImage.createGraphics();
         g.drawImage(originalImage, 0, 0, null);
         g.drawImage(shuffledArea, sx, sy, null);
         g.dispose();
+        rasterPool.release(shuffledArea);
 
+        byte[] imageBytes = imageUtils.imageToBytes(finalImage, renderPool.forkJoinPool());
+        rasterPool.release(finalImage);
         return new EncryptedData(sessionSalt, attemptCount, sx, sy,
                 areaWidth, areaHeight, origWidth, origHeight,
-                imageUtils.imageToBytes(finalImage));
+                imageBytes, fractalPalette, sessionPrng);
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.cipher.core.service.encryption.impl;
 
+import com.cipher.core.dto.segmentation.SegmentMapping;
 import com.cipher.core.dto.segmentation.SegmentationResult;
 import com.cipher.core.service.encryption.SegmentShuffler;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -9,9 +13,7 @@ import org.springframework.stereotype.Component;
 import java.awt.image.BufferedImage;
 import java.awt.Graphics2D;
 import java.security.SecureRandom;
-import java.util.*;
 import java.awt.*;
-import java.util.List;
 
 @Component
 @RequiredArgsConstructor
@@ -19,42 +21,38 @@ import java.util.List;
 public class ImageSegmentShufflerImpl implements SegmentShuffler {
 
     /**
-     * Создает список сегментов изображения заданного размера
-     * @param image исходное изображение
-     * @param segmentSize ширина и высота сегмента (может быть 1, 2 или любое другое значение)
-     * @return список прямоугольников, представляющих сегменты
+     * Пул растров: из него берутся итоговые изображения, массивы которых выдаются заполненными нулями.
      */
-    private static List<Rectangle> createSegments(BufferedImage image, int segmentSize) {
-        List<Rectangle> segments = new ArrayList<>();
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        for (int y = 0; y < height; y += segmentSize) {
-            for (int x = 0; x < width; x += segmentSize) {
-                int segW = Math.min(segmentSize, width - x);
-                int segH = Math.min(segmentSize, height - y);
-                segments.add(new Rectangle(x, y, segW, segH));
-            }
-        }
+    private final RasterPool rasterPool;
 
-        return segments;
-    }
+    /**
+     * Пул генерации: перестановка применяется параллельно по полосам строк сегментов.
+     */
+    private final RenderPool renderPool;
 
     /**
      * Выполняет перемешивание сегментов изображения.
      * Процесс включает:
      * <ol>
      *   <li>Определение размера сегмента на основе размеров изображения</li>
-     *   <li>Дополнение изображения до размеров, кратных размеру сегмента</li>
      *   <li>Разбиение на сегменты и их случайное перемешивание</li>
      * </ol>
+     * Перестановка выбирается из {@code prng} последовательно, а применяется копированием строк
+     * массивов пикселей ({@link SegmentPermutation}) параллельно в пуле {@link RenderPool}.
+     * <p>
+     * Дополнение до размеров, кратных сегменту, виртуальное: результат сразу имеет дополненный размер,
+     * крайние сегменты копируются обрезанными по исходному изображению, а недостающие пиксели остаются
+     * прозрачными нулями из пула. Результат совпадает с перемешиванием {@link #padImageToSegmentSize},
+     * но без полноразмерной дополненной копии.
+     * </p>
      *
-     * @param image исходное изображение для перемешивания
+     * @param image          исходное изображение для перемешивания
+     * @param includeMapping false, если перестановку не нужно возвращать
      * @return результат перемешивания, включающий перемешанное изображение,
-     *         размер сегмента и карту соответствия
+     *         размер сегмента и, если запрошена, перестановку сегментов
      */
     @Override
-    public SegmentationResult segmentAndShuffle(BufferedImage image, SecureRandom prng) {
+    public SegmentationResult segmentAndShuffle(BufferedImage image, SecureRandom prng, boolean includeMapping) {
         if (image == null) {
             throw new IllegalArgumentException("Image cannot be null");
         }
@@ -63,23 +61,16 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         }
         int segmentSize = generateSegmentSize(image.getWidth(), image.getHeight());
         log.info("Segment size used: {}", segmentSize);
-        BufferedImage paddedImage = padImageToSegmentSize(image, segmentSize);
-        List<Rectangle> segments = createSegments(paddedImage, segmentSize);
-        List<Integer> indices = getShuffledIndices(segments.size(), prng);
-
-        BufferedImage result = new BufferedImage(paddedImage.getWidth(), paddedImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = result.createGraphics();
-        for (int i = 0; i < segments.size(); i++) {
-            Rectangle src = segments.get(indices.get(i));
-            Rectangle dst = segments.get(i);
-            BufferedImage segment = paddedImage.getSubimage(src.x, src.y, src.width, src.height);
-            g.drawImage(segment, dst.x, dst.y, null);
-        }
-        g.dispose();
+        int paddedWidth = paddedSize(image.getWidth(), segmentSize);
+        int paddedHeight = paddedSize(image.getHeight(), segmentSize);
+        int[] indices = SegmentPermutation.shuffledIndices(
+                SegmentPermutation.segmentCount(image.getWidth(), image.getHeight(), segmentSize), prng);
 
-        Map<Integer, Integer> mapping = new HashMap<>();
-        for (int i = 0; i < indices.size(); i++) mapping.put(i, indices.get(i));
-        return new SegmentationResult(result, segmentSize, paddedImage.getWidth(), paddedImage.getHeight(), mapping);
+        BufferedImage result = rasterPool.acquireImage(paddedWidth, paddedHeight, BufferedImage.TYPE_INT_ARGB);
+        SegmentPermutation.apply(image, result, segmentSize, indices, renderPool.forkJoinPool());
+
+        return new SegmentationResult(result, segmentSize, paddedWidth, paddedHeight,
+                includeMapping ? indices : null);
     }
 
     /**
@@ -97,6 +88,27 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         if (shuffledImage == null) {
             throw new IllegalArgumentException("Shuffled image cannot be null");
         }
+        if (originalWidth <= 0 || originalHeight <= 0) {
+            throw new IllegalArgumentException("Original dimensions must be positive");
+        }
+        SegmentMapping mapping = unshuffleMapping(originalWidth, originalHeight, prng);
+
+        BufferedImage result = rasterPool.acquireImage(originalWidth, originalHeight, BufferedImage.TYPE_INT_ARGB);
+        SegmentPermutation.apply(shuffledImage, result, mapping.segmentSize(), mapping.sourceSegments(),
+                renderPool.forkJoinPool());
+        return result;
+    }
+
+    /**
+     * Выбирает перестановку для {@link #unshuffle}. Сетка дополненного перемешанного изображения
+     * содержит столько же сегментов, сколько сетка исходного размера, поэтому достаточно исходных размеров.
+     *
+     * @param originalWidth  оригинальная ширина изображения (до дополнения)
+     * @param originalHeight оригинальная высота изображения (до дополнения)
+     * @return сторона сегмента и обратная перестановка
+     */
+    @Override
+    public SegmentMapping unshuffleMapping(int originalWidth, int originalHeight, SecureRandom prng) {
         if (originalWidth <= 0 || originalHeight <= 0) {
             throw new IllegalArgumentException("Original dimensions must be positive");
         }
@@ -105,27 +117,15 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         }
         int segmentSize = generateSegmentSize(originalWidth, originalHeight);
         log.info("Segment size used: {}", segmentSize);
-        List<Rectangle> segments = createSegments(shuffledImage, segmentSize);
-        List<Integer> indices = getShuffledIndices(segments.size(), prng);
-
-        Map<Integer, Integer> reverse = new HashMap<>();
-        for (int i = 0; i < indices.size(); i++) reverse.put(indices.get(i), i);
-
-        BufferedImage result = new BufferedImage(originalWidth, originalHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = result.createGraphics();
-        for (int i = 0; i < segments.size(); i++) {
-            Rectangle src = segments.get(reverse.get(i));
-            Rectangle dst = segments.get(i);
-            BufferedImage segment = shuffledImage.getSubimage(src.x, src.y, src.width, src.height);
-            g.drawImage(segment, dst.x, dst.y, null);
-        }
-        g.dispose();
-        return result;
+        int[] indices = SegmentPermutation.shuffledIndices(
+                SegmentPermutation.segmentCount(originalWidth, originalHeight, segmentSize), prng);
+        return new SegmentMapping(segmentSize, SegmentPermutation.inverse(indices));
     }
 
     /**
      * Дополняет изображение прозрачными пикселями до размеров, кратных размеру сегмента.
-     * Дополнение добавляется справа и снизу изображения.
+     * Дополнение добавляется справа и снизу изображения. {@link #segmentAndShuffle} дополненную
+     * копию не создаёт, метод нужен только если дополненное изображение требуется само по себе.
      *
      * @param image       исходное изображение
      * @param segmentSize размер сегмента
@@ -138,14 +138,14 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         if (segmentSize <= 0) {
             throw new IllegalArgumentException("Segment size must be positive");
         }
-        int newWidth = (int) Math.ceil((double) image.getWidth() / segmentSize) * segmentSize;
-        int newHeight = (int) Math.ceil((double) image.getHeight() / segmentSize) * segmentSize;
+        int newWidth = paddedSize(image.getWidth(), segmentSize);
+        int newHeight = paddedSize(image.getHeight(), segmentSize);
 
         if (image.getWidth() == newWidth && image.getHeight() == newHeight) {
             return image;
         }
 
-        BufferedImage paddedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage paddedImage = rasterPool.acquireImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = paddedImage.createGraphics();
 
         g.drawImage(image, 0, 0, null);
@@ -163,6 +163,10 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         return paddedImage;
     }
 
+    private static int paddedSize(int size, int segmentSize) {
+        return (size + segmentSize - 1) / segmentSize * segmentSize;
+    }
+
     /**
      * Генерирует размер сегмента в зависимости от размера изображения
      */
@@ -173,23 +177,4 @@ public class ImageSegmentShufflerImpl implements SegmentShuffler {
         else if (maxDimension <= 1920) return 4;
         else return 16;
     }
-
-    /**
-     * Перемешивает список детерминированным образом
-     */
-    private <T> void shuffleList(List<T> list, SecureRandom prng) {
-        for (int i = list.size() - 1; i > 0; i--) {
-            int j = prng.nextInt(i + 1);
-            T temp = list.get(i);
-            list.set(i, list.get(j));
-            list.set(j, temp);
-        }
-    }
-
-    private List<Integer> getShuffledIndices(int size, SecureRandom prng) {
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < size; i++) indices.add(i);
-        shuffleList(indices, prng);
-        return indices;
-    }
 }
\ No newline at end of file
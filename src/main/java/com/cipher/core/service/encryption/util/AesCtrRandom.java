@@ -0,0 +1,203 @@
+package com.cipher.core.service.encryption.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Детерминированный генератор на ключевом потоке AES-256-CTR.
+ * <p>
+ * Поток — это {@code AES_k(0) || AES_k(1) || ...} со 128-битным счётчиком big-endian, начиная с нуля.
+ * Блоки шифруются пачками по {@link #BATCH_BYTES} байт, и значения читаются из готового буфера без
+ * выделения памяти и синхронизации на каждый вызов, в отличие от {@code SHA1PRNG}. Методом
+ * {@link #seek(long)} можно перейти к любому байту потока, не вычисляя предыдущие блоки.
+ * </p>
+ * <p>
+ * Преобразование байтов в числа — часть версии {@link PrngVersion#AES_CTR} и не должно меняться:
+ * {@code nextInt()} — 4 байта big-endian, {@code nextLong()} — два {@code nextInt()},
+ * {@code nextInt(bound)} — умножение на границу с отбраковкой (метод Лемира),
+ * {@code nextDouble()} — старшие 53 бита {@code nextLong()}, {@code nextBoolean()} — знак {@code nextInt()}.
+ * </p>
+ * <p>
+ * Генератор не потокобезопасен и не переинициализируется через {@code setSeed}.
+ * </p>
+ */
+public final class AesCtrRandom extends SecureRandom {
+
+    /**
+     * Размер пачки ключевого потока, шифруемой за один вызов {@link Cipher#update}.
+     */
+    static final int BATCH_BYTES = 4096;
+
+    private static final int BLOCK_BYTES = 16;
+    private static final byte[] ZEROS = new byte[BATCH_BYTES];
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final byte[] batch = new byte[BATCH_BYTES];
+    /** Смещение в потоке первого байта {@link #batch}. */
+    private long batchStart;
+    /** Позиция следующего байта в {@link #batch}. */
+    private int index;
+
+    /**
+     * @param key ключ AES длиной 16, 24 или 32 байта
+     */
+    public AesCtrRandom(byte[] key) {
+        super(new ReseedForbiddenSpi(), null);
+        if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes");
+        }
+        try {
+            this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/CTR is not available", e);
+        }
+        this.key = new SecretKeySpec(key, "AES");
+        seek(0);
+    }
+
+    /**
+     * Переходит к байту потока с номером {@code offset}.
+     *
+     * @param offset смещение от начала потока
+     */
+    public void seek(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        long block = offset / BLOCK_BYTES;
+        byte[] counter = new byte[BLOCK_BYTES];
+        for (int i = 0; i < Long.BYTES; i++) {
+            counter[BLOCK_BYTES - 1 - i] = (byte) (block >>> (8 * i));
+        }
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(counter));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize AES/CTR", e);
+        }
+        batchStart = block * BLOCK_BYTES - BATCH_BYTES;
+        refill();
+        index = (int) (offset - batchStart);
+    }
+
+    /**
+     * @return смещение следующего байта потока
+     */
+    public long position() {
+        return batchStart + index;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "AES-CTR";
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            if (index == BATCH_BYTES) {
+                refill();
+            }
+            int length = Math.min(bytes.length - copied, BATCH_BYTES - index);
+            System.arraycopy(batch, index, bytes, copied, length);
+            index += length;
+            copied += length;
+        }
+    }
+
+    @Override
+    public int nextInt() {
+        if (BATCH_BYTES - index >= Integer.BYTES) {
+            int value = (int) INT_BE.get(batch, index);
+            index += Integer.BYTES;
+            return value;
+        }
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            if (index == BATCH_BYTES) {
+                refill();
+            }
+            value = (value << 8) | (batch[index++] & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive: " + bound);
+        }
+        long product = (nextInt() & 0xFFFFFFFFL) * bound;
+        long low = product & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = (0x1_0000_0000L - bound) % bound;
+            while (low < threshold) {
+                product = (nextInt() & 0xFFFFFFFFL) * bound;
+                low = product & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    @Override
+    public long nextLong() {
+        return ((long) nextInt() << 32) | (nextInt() & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextInt() >>> 8) * 0x1.0p-24f;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextInt() < 0;
+    }
+
+    private void refill() {
+        try {
+            cipher.update(ZEROS, 0, BATCH_BYTES, batch, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        batchStart += BATCH_BYTES;
+        index = 0;
+    }
+
+    /**
+     * Поток полностью задан ключом: пересев и выдача энтропии через {@link SecureRandomSpi} запрещены.
+     */
+    private static final class ReseedForbiddenSpi extends SecureRandomSpi {
+
+        @Override
+        protected void engineSetSeed(byte[] seed) {
+            throw new UnsupportedOperationException("AES-CTR stream is defined by its key and cannot be reseeded");
+        }
+
+        @Override
+        protected void engineNextBytes(byte[] bytes) {
+            throw new UnsupportedOperationException("Use AesCtrRandom.nextBytes");
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(int numBytes) {
+            throw new UnsupportedOperationException("AES-CTR stream does not provide seed material");
+        }
+    }
+}
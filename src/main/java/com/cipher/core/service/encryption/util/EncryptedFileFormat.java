@@ -0,0 +1,179 @@
+package com.cipher.core.service.encryption.util;
+
+import com.cipher.core.dto.encryption.EncryptedData;
+import com.cipher.core.dto.encryption.EncryptedFileHeader;
+import com.cipher.core.threading.PaletteVersion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Формат зашифрованного файла .bin.
+ * <p>
+ * Версия 1 (исходная, без сигнатуры):
+ * соль(16) + attempts(4) + startX, startY, areaWidth, areaHeight, fullWidth, fullHeight (6 int) + RGB-данные.
+ * </p>
+ * <p>
+ * Версия 2: сигнатура {@code "MFCE"}(4) + версия формата(1) + версия палитры(1) + поля версии 1.
+ * </p>
+ * <p>
+ * Версия 3: как версия 2, но после версии палитры записана версия генератора {@link PrngVersion}(1).
+ * Файлы версий 1 и 2 читаются с генератором {@link PrngVersion#SHA1PRNG}.
+ * </p>
+ * <p>
+ * Старые файлы сигнатуры не содержат и начинаются со случайной соли. Заголовок версий 2 и 3
+ * принимается только если сигнатура, версии и длина данных согласованы; иначе файл читается
+ * как версия 1 с палитрой {@link PaletteVersion#V1}.
+ * </p>
+ */
+public final class EncryptedFileFormat {
+
+    public static final int LEGACY_FORMAT = 1;
+    public static final int PALETTE_FORMAT = 2;
+    public static final int CURRENT_FORMAT = 3;
+
+    private static final byte[] MAGIC = {'M', 'F', 'C', 'E'};
+    private static final int SALT_LENGTH = 16;
+    private static final int LEGACY_HEADER_SIZE = SALT_LENGTH + 4 + 6 * 4;
+    private static final int PALETTE_HEADER_SIZE = MAGIC.length + 2 + LEGACY_HEADER_SIZE;
+    private static final int CURRENT_HEADER_SIZE = PALETTE_HEADER_SIZE + 1;
+
+    private EncryptedFileFormat() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Сериализует зашифрованные данные в текущем формате.
+     *
+     * @param data зашифрованные данные
+     * @return содержимое файла
+     */
+    public static byte[] encode(EncryptedData data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Encrypted data cannot be null");
+        }
+        if (data.sessionSalt() == null || data.sessionSalt().length != SALT_LENGTH) {
+            throw new IllegalArgumentException("Session salt must be " + SALT_LENGTH + " bytes");
+        }
+        if (data.paletteVersion() == null) {
+            throw new IllegalArgumentException("Palette version cannot be null");
+        }
+        if (data.prngVersion() == null) {
+            throw new IllegalArgumentException("PRNG version cannot be null");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CURRENT_HEADER_SIZE + data.imageBytes().length);
+        buffer.put(MAGIC);
+        buffer.put((byte) CURRENT_FORMAT);
+        buffer.put((byte) data.paletteVersion().code());
+        buffer.put((byte) data.prngVersion().code());
+        buffer.put(data.sessionSalt());
+        buffer.putInt(data.attemptCount());
+        buffer.putInt(data.startX());
+        buffer.putInt(data.startY());
+        buffer.putInt(data.areaWidth());
+        buffer.putInt(data.areaHeight());
+        buffer.putInt(data.originalWidth());
+        buffer.putInt(data.originalHeight());
+        buffer.put(data.imageBytes());
+        return buffer.array();
+    }
+
+    /**
+     * Читает заголовок файла любой поддерживаемой версии.
+     * После вызова позиция буфера указывает на начало RGB-данных.
+     *
+     * @param buffer содержимое файла, позиция — начало файла
+     * @return заголовок файла
+     */
+    public static EncryptedFileHeader readHeader(ByteBuffer buffer) {
+        int start = buffer.position();
+        EncryptedFileHeader versioned = tryReadVersioned(buffer);
+        if (versioned != null) {
+            return versioned;
+        }
+
+        buffer.position(start);
+        if (buffer.remaining() < LEGACY_HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Файл слишком короткий: %d байт, заголовок занимает %d", buffer.remaining(), LEGACY_HEADER_SIZE));
+        }
+        return readFields(buffer, LEGACY_FORMAT, PaletteVersion.V1, PrngVersion.SHA1PRNG);
+    }
+
+    /**
+     * @return ожидаемая длина RGB-данных для заголовка
+     */
+    public static long payloadLength(EncryptedFileHeader header) {
+        return (long) header.fullWidth() * header.fullHeight() * 3;
+    }
+
+    private static EncryptedFileHeader tryReadVersioned(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < PALETTE_HEADER_SIZE) {
+            return null;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(start + i) != MAGIC[i]) {
+                return null;
+            }
+        }
+        int format = buffer.get(start + MAGIC.length) & 0xFF;
+        int paletteCode = buffer.get(start + MAGIC.length + 1) & 0xFF;
+        if (!isKnownPalette(paletteCode)) {
+            return null;
+        }
+
+        PrngVersion prng;
+        if (format == PALETTE_FORMAT) {
+            prng = PrngVersion.SHA1PRNG;
+            buffer.position(start + MAGIC.length + 2);
+        } else if (format == CURRENT_FORMAT && buffer.remaining() >= CURRENT_HEADER_SIZE
+                && isKnownPrng(buffer.get(start + MAGIC.length + 2) & 0xFF)) {
+            prng = PrngVersion.fromCode(buffer.get(start + MAGIC.length + 2) & 0xFF);
+            buffer.position(start + MAGIC.length + 3);
+        } else {
+            return null;
+        }
+        EncryptedFileHeader header = readFields(buffer, format, PaletteVersion.fromCode(paletteCode), prng);
+        if (header.fullWidth() <= 0 || header.fullHeight() <= 0
+                || payloadLength(header) != buffer.remaining()) {
+            // Случайная соль старого файла совпала с сигнатурой
+            return null;
+        }
+        return header;
+    }
+
+    private static boolean isKnownPalette(int code) {
+        for (PaletteVersion version : PaletteVersion.values()) {
+            if (version.code() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKnownPrng(int code) {
+        for (PrngVersion version : PrngVersion.values()) {
+            if (version.code() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static EncryptedFileHeader readFields(ByteBuffer buffer, int format, PaletteVersion palette,
+                                                  PrngVersion prng) {
+        byte[] salt = new byte[SALT_LENGTH];
+        buffer.get(salt);
+        int attempts = buffer.getInt();
+        int startX = buffer.getInt();
+        int startY = buffer.getInt();
+        int areaWidth = buffer.getInt();
+        int areaHeight = buffer.getInt();
+        int fullWidth = buffer.getInt();
+        int fullHeight = buffer.getInt();
+        return new EncryptedFileHeader(format, palette, prng, salt, attempts,
+                startX, startY, areaWidth, areaHeight, fullWidth, fullHeight);
+    }
+}
@@ -0,0 +1,64 @@
+package com.cipher.core.service.encryption.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Массив пикселей изображения {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} с адресацией строк.
+ * Для подизображений учитываются смещение и длина строки родительского растра.
+ *
+ * @param data   массив пикселей
+ * @param offset индекс пикселя (0, 0)
+ * @param stride длина строки в элементах массива
+ * @param opaque true для {@code TYPE_INT_RGB}: старший байт массива не является альфа-каналом
+ */
+record IntRaster(int[] data, int offset, int stride, boolean opaque) {
+
+    /**
+     * @return массив изображения или {@code null}, если пиксели нельзя читать напрямую
+     */
+    static IntRaster of(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt buffer) || buffer.getNumBanks() != 1
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel model)) {
+            return null;
+        }
+        int offset = buffer.getOffset()
+                + model.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+        return new IntRaster(buffer.getData(), offset, model.getScanlineStride(),
+                type == BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Читает пиксели изображения в формате {@code getRGB}: напрямую, если это возможно,
+     * иначе копией в новый массив.
+     *
+     * @return массив, значения которого после применения {@link #alphaMask()} совпадают с {@code getRGB}
+     */
+    static IntRaster readable(BufferedImage image) {
+        IntRaster raster = of(image);
+        if (raster != null) {
+            return raster;
+        }
+        int width = image.getWidth();
+        return new IntRaster(image.getRGB(0, 0, width, image.getHeight(), null, 0, width), 0, width, false);
+    }
+
+    /**
+     * @return маска, которую нужно наложить на значение массива, чтобы получить альфа-канал {@code getRGB}
+     */
+    int alphaMask() {
+        return opaque ? 0xFF000000 : 0;
+    }
+
+    int rowOffset(int y) {
+        return offset + y * stride;
+    }
+}
@@ -0,0 +1,83 @@
+package com.cipher.core.service.encryption.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Версия детерминированного генератора, из которого выбираются параметры фрактала и перестановка сегментов.
+ * <p>
+ * Версия записывается в заголовок зашифрованного файла: из одного и того же ключа HKDF разные версии
+ * дают разные последовательности, поэтому дешифратор обязан использовать ту же версию, что и шифратор.
+ * </p>
+ */
+public enum PrngVersion {
+    /**
+     * {@code SecureRandom.getInstance("SHA1PRNG")} с ключом в качестве начального значения.
+     * Используется для всех файлов, записанных до появления версии генератора в заголовке.
+     */
+    SHA1PRNG(1) {
+        @Override
+        public SecureRandom create(byte[] key) {
+            try {
+                SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+                prng.setSeed(key);
+                return prng;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA1PRNG is not available", e);
+            }
+        }
+    },
+    /**
+     * Ключевой поток AES-256-CTR {@link AesCtrRandom}: значения читаются из блоков шифра пачками
+     * и позволяют перейти к любому смещению потока.
+     */
+    AES_CTR(2) {
+        @Override
+        public SecureRandom create(byte[] key) {
+            return new AesCtrRandom(key);
+        }
+    };
+
+    /**
+     * Версия, которой шифруются новые файлы.
+     */
+    public static final PrngVersion CURRENT = AES_CTR;
+
+    private final int code;
+
+    PrngVersion(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return код версии, записываемый в заголовок файла
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Создаёт генератор, последовательность которого полностью определяется ключом.
+     *
+     * @param key ключ из HKDF (32 байта)
+     * @return новый генератор
+     */
+    public abstract SecureRandom create(byte[] key);
+
+    /**
+     * Находит версию по коду из заголовка файла.
+     *
+     * @param code код версии
+     * @return версия генератора
+     * @throws IllegalArgumentException если код неизвестен
+     */
+    public static PrngVersion fromCode(int code) {
+        for (PrngVersion version : values()) {
+            if (version.code == code) {
+                return version;
+            }
+        }
+        throw new IllegalArgumentException("Unknown PRNG version: " + code);
+    }
+}
@@ -0,0 +1,338 @@
+package com.cipher.core.service.encryption.util;
+
+import com.cipher.core.threading.PixelSink;
+import com.cipher.core.threading.RowBands;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Перестановка квадратных сегментов изображения на массивах {@code int[]}.
+ * <p>
+ * Сегменты нумеруются построчно по сетке исходного изображения; крайние сегменты могут быть меньше
+ * {@code segmentSize}. Строки сегментов копируются из массива пикселей источника в массив результата
+ * через {@code System.arraycopy}, без {@code getSubimage} и {@code Graphics2D.drawImage} на каждый сегмент.
+ * Результат совпадает с отрисовкой сегментов через {@code drawImage} для непрозрачных пикселей;
+ * полупрозрачные пиксели копируются без потерь, а не смешиваются с фоном.
+ * </p>
+ * <p>
+ * {@link #xorSink} объединяет обратную перестановку с XOR фрактала при дешифровании.
+ * </p>
+ */
+public final class SegmentPermutation {
+
+    private SegmentPermutation() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Перемешивает индексы {@code 0..count-1} алгоритмом Фишера–Йетса.
+     * Последовательность вызовов {@code prng.nextInt(i + 1)} та же, что у прежнего перемешивания
+     * {@code List<Integer>}, поэтому из того же состояния генератора получается та же перестановка.
+     *
+     * @param count количество сегментов
+     * @param prng  генератор перестановки
+     * @return массив, в котором элемент i — номер исходного сегмента для позиции i
+     */
+    public static int[] shuffledIndices(int count, SecureRandom prng) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Segment count must not be negative: " + count);
+        }
+        if (prng == null) {
+            throw new IllegalArgumentException("PRNG cannot be null");
+        }
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = prng.nextInt(i + 1);
+            int temp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = temp;
+        }
+        return indices;
+    }
+
+    /**
+     * @return обратная перестановка: {@code inverse[permutation[i]] == i}
+     */
+    public static int[] inverse(int[] permutation) {
+        int[] inverse = new int[permutation.length];
+        for (int i = 0; i < permutation.length; i++) {
+            inverse[permutation[i]] = i;
+        }
+        return inverse;
+    }
+
+    /**
+     * @return количество сегментов в сетке изображения заданного размера
+     */
+    public static int segmentCount(int width, int height, int segmentSize) {
+        return ceilDiv(width, segmentSize) * ceilDiv(height, segmentSize);
+    }
+
+    /**
+     * Переставляет сегменты в вызывающем потоке.
+     *
+     * @see #apply(BufferedImage, BufferedImage, int, int[], ForkJoinPool)
+     */
+    public static void apply(BufferedImage source, BufferedImage target, int segmentSize, int[] sourceSegments) {
+        apply(source, target, segmentSize, sourceSegments, null);
+    }
+
+    /**
+     * Переставляет сегменты: в позицию i результата копируется сегмент {@code sourceSegments[i]} источника.
+     * <p>
+     * Сетка сегментов строится по размеру {@code source}. Если {@code target} меньше, сегменты обрезаются
+     * по его границам; части позиций, не покрытые сегментом, не изменяются. Изображения не должны
+     * использовать общий массив пикселей.
+     * </p>
+     * <p>
+     * Каждая позиция результата читает ровно один сегмент источника, поэтому полосы строк сегментов
+     * результата не пересекаются и при переданном пуле ForkJoin заполняются параллельно.
+     * </p>
+     *
+     * @param source         изображение с исходным порядком сегментов
+     * @param target         изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} для результата
+     * @param segmentSize    сторона сегмента
+     * @param sourceSegments номер исходного сегмента для каждой позиции результата
+     * @param parallel       пул ForkJoin или {@code null} для обработки в вызывающем потоке
+     */
+    public static void apply(BufferedImage source, BufferedImage target, int segmentSize, int[] sourceSegments,
+                             ForkJoinPool parallel) {
+        if (source == null || target == null || sourceSegments == null) {
+            throw new IllegalArgumentException("Images and permutation cannot be null");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        int columns = ceilDiv(source.getWidth(), segmentSize);
+        int rows = ceilDiv(source.getHeight(), segmentSize);
+        if (sourceSegments.length != columns * rows) {
+            throw new IllegalArgumentException("Permutation length " + sourceSegments.length
+                    + " does not match " + columns + "x" + rows + " segments");
+        }
+        IntRaster out = IntRaster.of(target);
+        if (out == null) {
+            throw new IllegalArgumentException("Target must be TYPE_INT_RGB or TYPE_INT_ARGB, got type "
+                    + target.getType());
+        }
+        Plan plan = new Plan(IntRaster.readable(source), out, source.getWidth(), source.getHeight(),
+                target.getWidth(), target.getHeight(), columns, segmentSize, sourceSegments);
+
+        RowBands.forEach(rows, (long) segmentSize * target.getWidth(), plan::copy, parallel);
+    }
+
+    /**
+     * Создаёт приёмник пикселей, который за один проход восстанавливает порядок сегментов и XOR-ит
+     * результат с фракталом.
+     * <p>
+     * Для пикселя (x, y) полученной строки фрактала читается пиксель источника из сегмента
+     * {@code sourceSegments[i]}, где i — позиция, в которую попадает (x, y), и в {@code target} записывается
+     * {@code (пиксель ^ (фрактал & 0x00FFFFFF)) | alphaMask}. Значения {@code getRGB} совпадают с
+     * {@link #apply(BufferedImage, BufferedImage, int, int[])} в промежуточное изображение и последующим
+     * {@link XOR#xorSink(BufferedImage, BufferedImage)}, но промежуточное изображение не создаётся и каждый
+     * пиксель результата записывается один раз. Пиксели позиций, не покрытые обрезанным крайним сегментом,
+     * не изменяются.
+     * </p>
+     * <p>
+     * {@code source} и {@code target} не должны использовать общий массив: строки результата читают
+     * произвольные строки источника, а тайлы фрактала пишутся параллельно.
+     * </p>
+     *
+     * @param source         перемешанное изображение; сетка сегментов строится по его размеру
+     * @param target         изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} того же размера,
+     *                       в том числе подизображение, для результата
+     * @param segmentSize    сторона сегмента
+     * @param sourceSegments номер сегмента источника для каждой позиции результата
+     * @return приёмник для {@code FractalRenderer#renderTo} с размером {@code target}
+     */
+    public static PixelSink xorSink(BufferedImage source, BufferedImage target, int segmentSize,
+                                    int[] sourceSegments) {
+        if (source == null || target == null || sourceSegments == null) {
+            throw new IllegalArgumentException("Images and permutation cannot be null");
+        }
+        if (target.getWidth() != source.getWidth() || target.getHeight() != source.getHeight()) {
+            throw new IllegalArgumentException("Images must have the same dimensions");
+        }
+        IntRaster in = IntRaster.readable(source);
+        int alphaMask = in.alphaMask();
+        return permutedSink(target, segmentSize, sourceSegments,
+                (sx, sy, count, fractal, fractalOffset, out, outOffset) -> XOR.xorRow(in.data(),
+                        in.rowOffset(sy) + sx, alphaMask, fractal, fractalOffset, out, outOffset, count),
+                null);
+    }
+
+    /**
+     * То же, что {@link #xorSink(BufferedImage, BufferedImage, int, int[])}, но перемешанные пиксели читаются
+     * из байтов RGB (по 3 байта на пиксель, как в файле .bin), например из отображённого в память файла,
+     * без копирования в изображение. Результат непрозрачен.
+     * <p>
+     * Позиции, не покрытые обрезанным крайним сегментом, получают байты самой области без XOR, как если бы
+     * {@code target} был заранее заполнен из буфера: так дешифрование не копирует область перед проходом.
+     * </p>
+     * <p>
+     * Буфер читается только абсолютными методами, поэтому его позиция не меняется и тайлы
+     * могут читать его параллельно.
+     * </p>
+     *
+     * @param source         байты RGB перемешанной области размера {@code target}
+     * @param offset         индекс байта пикселя (0, 0) области
+     * @param stride         длина строки в байтах
+     * @param target         изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB}, в том числе
+     *                       подизображение, для результата; сетка сегментов строится по его размеру
+     * @param segmentSize    сторона сегмента
+     * @param sourceSegments номер сегмента источника для каждой позиции результата
+     * @return приёмник для {@code FractalRenderer#renderTo} с размером {@code target}
+     */
+    public static PixelSink xorSink(ByteBuffer source, int offset, int stride, BufferedImage target,
+                                    int segmentSize, int[] sourceSegments) {
+        if (source == null || target == null || sourceSegments == null) {
+            throw new IllegalArgumentException("Source, target and permutation cannot be null");
+        }
+        if (offset < 0 || stride < 3 * target.getWidth()
+                || (long) offset + (long) stride * (target.getHeight() - 1) + 3L * target.getWidth()
+                > source.limit()) {
+            throw new IllegalArgumentException("Source buffer does not cover the " + target.getWidth() + "x"
+                    + target.getHeight() + " area");
+        }
+        return permutedSink(target, segmentSize, sourceSegments,
+                (sx, sy, count, fractal, fractalOffset, out, outOffset) -> {
+                    int index = offset + sy * stride + sx * 3;
+                    for (int i = 0; i < count; i++, index += 3) {
+                        int rgb = (source.get(index) & 0xFF) << 16 | (source.get(index + 1) & 0xFF) << 8
+                                | (source.get(index + 2) & 0xFF);
+                        out[outOffset + i] = (rgb ^ (fractal[fractalOffset + i] & 0x00FFFFFF)) | 0xFF000000;
+                    }
+                },
+                (x, y, count, out, outOffset) -> {
+                    int index = offset + y * stride + x * 3;
+                    for (int i = 0; i < count; i++, index += 3) {
+                        out[outOffset + i] = 0xFF000000 | (source.get(index) & 0xFF) << 16
+                                | (source.get(index + 1) & 0xFF) << 8 | (source.get(index + 2) & 0xFF);
+                    }
+                });
+    }
+
+    /**
+     * Чтение отрезка строки перемешанного источника с XOR фрактала.
+     */
+    @FunctionalInterface
+    private interface SourceRun {
+        /**
+         * Обрабатывает {@code count} пикселей источника, начиная с (sx, sy).
+         */
+        void xor(int sx, int sy, int count, int[] fractal, int fractalOffset, int[] out, int outOffset);
+    }
+
+    /**
+     * Заполнение отрезка позиции результата, который не покрыт обрезанным сегментом источника.
+     */
+    @FunctionalInterface
+    private interface UncoveredRun {
+        /**
+         * Записывает {@code count} пикселей результата, начиная с (x, y).
+         */
+        void fill(int x, int y, int count, int[] out, int outOffset);
+    }
+
+    /**
+     * Общая часть приёмников {@code xorSink}: делит строку фрактала на отрезки внутри позиций сегментов
+     * и для каждого находит соответствующий отрезок источника.
+     *
+     * @param uncovered заполнение непокрытых частей позиций или {@code null}, чтобы их не менять
+     */
+    private static PixelSink permutedSink(BufferedImage target, int segmentSize, int[] sourceSegments,
+                                          SourceRun source, UncoveredRun uncovered) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        int width = target.getWidth();
+        int height = target.getHeight();
+        int columns = ceilDiv(width, segmentSize);
+        if (sourceSegments.length != columns * ceilDiv(height, segmentSize)) {
+            throw new IllegalArgumentException("Permutation length " + sourceSegments.length
+                    + " does not match the segment grid");
+        }
+        IntRaster out = IntRaster.of(target);
+        if (out == null) {
+            throw new IllegalArgumentException("Target must be TYPE_INT_RGB or TYPE_INT_ARGB, got type "
+                    + target.getType());
+        }
+
+        return (x, y, pixels, offset, length) -> {
+            int rowBase = (y / segmentSize) * columns;
+            int yInSegment = y % segmentSize;
+            int end = x + length;
+            for (int px = x; px < end; ) {
+                int column = px / segmentSize;
+                int run = Math.min(end, (column + 1) * segmentSize) - px;
+                int segment = sourceSegments[rowBase + column];
+                int sx = (segment % columns) * segmentSize + (px - column * segmentSize);
+                int sy = (segment / columns) * segmentSize + yInSegment;
+                // Крайний сегмент источника может быть меньше позиции, в которую он попадает
+                int count = sy < height ? Math.min(run, width - sx) : 0;
+                if (count > 0) {
+                    source.xor(sx, sy, count, pixels, offset + (px - x), out.data(), out.rowOffset(y) + px);
+                }
+                if (count < run && uncovered != null) {
+                    uncovered.fill(px + count, y, run - count, out.data(), out.rowOffset(y) + px + count);
+                }
+                px += run;
+            }
+        };
+    }
+
+    /**
+     * Неизменяемые параметры одной перестановки.
+     */
+    private record Plan(IntRaster in, IntRaster out, int width, int height, int targetWidth, int targetHeight,
+                        int columns, int segmentSize, int[] sourceSegments) {
+
+        /**
+         * Заполняет строки сегментов результата {@code [fromRow, toRow)}.
+         */
+        void copy(int fromRow, int toRow) {
+            int alphaMask = in.alphaMask();
+            int[] src = in.data();
+            int[] dst = out.data();
+            for (int row = fromRow; row < toRow; row++) {
+                int dy = row * segmentSize;
+                for (int column = 0; column < columns; column++) {
+                    int dx = column * segmentSize;
+                    int segment = sourceSegments[row * columns + column];
+                    int sx = (segment % columns) * segmentSize;
+                    int sy = (segment / columns) * segmentSize;
+                    int copyWidth = Math.min(Math.min(segmentSize, width - sx), targetWidth - dx);
+                    int copyHeight = Math.min(Math.min(segmentSize, height - sy), targetHeight - dy);
+                    if (copyWidth <= 0) {
+                        continue;
+                    }
+
+                    for (int y = 0; y < copyHeight; y++) {
+                        int from = in.rowOffset(sy + y) + sx;
+                        int to = out.rowOffset(dy + y) + dx;
+                        if (copyWidth == 1) {
+                            dst[to] = src[from] | alphaMask;
+                            continue;
+                        }
+                        System.arraycopy(src, from, dst, to, copyWidth);
+                        if (alphaMask != 0) {
+                            for (int x = 0; x < copyWidth; x++) {
+                                dst[to + x] |= alphaMask;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
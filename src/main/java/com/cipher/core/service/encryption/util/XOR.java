@@ -1,41 +1,210 @@
 package com.cipher.core.service.encryption.util;
 
+import com.cipher.core.threading.MandelbrotKernels;
+import com.cipher.core.threading.PixelSink;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RowBands;
 import org.springframework.stereotype.Component;
 
 import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Попиксельный XOR изображения с фракталом.
+ * <p>
+ * Результат: RGB-компоненты — XOR компонент обоих изображений, альфа-канал — альфа-канал первого
+ * изображения в том виде, в каком его возвращает {@code getRGB} (для {@code TYPE_INT_RGB} это 0xFF).
+ * </p>
+ * <p>
+ * Изображения {@code TYPE_INT_RGB} и {@code TYPE_INT_ARGB}, в том числе подизображения, обрабатываются
+ * напрямую в их массивах {@code int[]}: строка считается как {@code (a ^ (b & 0x00FFFFFF)) | alphaMask},
+ * при доступном модуле {@code jdk.incubator.vector} — на Vector API. Остальные типы читаются построчно
+ * через {@code getRGB}. Если передан пул ForkJoin, полосы строк обрабатываются параллельно.
+ * </p>
+ * <p>
+ * {@link #xorSink(BufferedImage, BufferedImage)} применяет ту же операцию к строкам фрактала по мере их
+ * генерации, так что изображение фрактала не создаётся вовсе.
+ * </p>
+ */
 @Component
 public class XOR {
+
+    /**
+     * {@code VectorXor.xorRow} из отдельно собранных SIMD-исходников или {@code null}, если Vector API
+     * недоступен: тогда строки считаются скалярным циклом.
+     */
+    private static final MethodHandle VECTOR_XOR_ROW = findVectorXorRow();
+
     public static BufferedImage performXOR(BufferedImage image1, BufferedImage image2) {
-        if (image1 == null || image2 == null) {
-            throw new IllegalArgumentException("Images cannot be null");
-        }
-        if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) {
-            throw new IllegalArgumentException("Images must have the same dimensions");
-        }
+        return performXOR(image1, image2, null);
+    }
+
+    /**
+     * Выполняет XOR, размещая результат в растре из пула.
+     *
+     * @param image1 изображение, альфа-канал которого сохраняется
+     * @param image2 изображение того же размера
+     * @param pool   пул растров или {@code null} для нового изображения
+     * @return новое изображение {@code TYPE_INT_ARGB}; его можно вернуть в пул, когда оно больше не нужно
+     */
+    public static BufferedImage performXOR(BufferedImage image1, BufferedImage image2, RasterPool pool) {
+        return performXOR(image1, image2, pool, null);
+    }
+
+    /**
+     * Выполняет XOR в новое изображение, обрабатывая полосы строк параллельно.
+     *
+     * @param image1   изображение, альфа-канал которого сохраняется
+     * @param image2   изображение того же размера
+     * @param pool     пул растров или {@code null} для нового изображения
+     * @param parallel пул ForkJoin или {@code null} для обработки в вызывающем потоке
+     * @return новое изображение {@code TYPE_INT_ARGB}; его можно вернуть в пул, когда оно больше не нужно
+     */
+    public static BufferedImage performXOR(BufferedImage image1, BufferedImage image2,
+                                           RasterPool pool, ForkJoinPool parallel) {
+        checkArgs(image1, image2);
         int width = image1.getWidth();
         int height = image1.getHeight();
 
         // Используем тип с альфа-каналом
-        BufferedImage resultImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage resultImage = pool != null
+                ? pool.acquireImage(width, height, BufferedImage.TYPE_INT_ARGB)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb1 = image1.getRGB(x, y);
-                int rgb2 = image2.getRGB(x, y);
+        xor(image1, image2, IntRaster.of(resultImage), parallel);
+        return resultImage;
+    }
 
-                // Сохраняем альфа-канал из исходного изображения
-                int alpha = (rgb1 >> 24) & 0xFF;
+    /**
+     * Выполняет XOR на месте: результат записывается в массив пикселей {@code target}.
+     * Значения {@code getRGB} после вызова совпадают с результатом {@link #performXOR(BufferedImage, BufferedImage)}.
+     *
+     * @param target   изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB}, альфа-канал которого сохраняется
+     * @param key      изображение того же размера
+     * @param parallel пул ForkJoin или {@code null} для обработки в вызывающем потоке
+     * @return {@code target}
+     */
+    public static BufferedImage performXORInPlace(BufferedImage target, BufferedImage key, ForkJoinPool parallel) {
+        checkArgs(target, key);
+        IntRaster out = IntRaster.of(target);
+        if (out == null) {
+            throw new IllegalArgumentException("In-place XOR requires TYPE_INT_RGB or TYPE_INT_ARGB image, got type "
+                    + target.getType());
+        }
+        xor(target, key, out, parallel);
+        return target;
+    }
 
-                // Применяем XOR только к RGB компонентам
-                int xorRGB = (rgb1 & 0x00FFFFFF) ^ (rgb2 & 0x00FFFFFF);
+    /**
+     * @return true, если {@link #performXORInPlace} может записать результат в массив изображения
+     */
+    public static boolean isInPlaceSupported(BufferedImage image) {
+        return image != null && IntRaster.of(image) != null;
+    }
 
-                // Восстанавливаем альфа-канал
-                xorRGB = (alpha << 24) | (xorRGB & 0x00FFFFFF);
+    /**
+     * Создаёт приёмник пикселей, который XOR-ит каждую полученную строку фрактала с соответствующей
+     * строкой {@code source} и записывает результат в {@code target}.
+     * <p>
+     * После генерации фрактала в этот приёмник значения {@code getRGB} изображения {@code target}
+     * совпадают с {@link #performXOR(BufferedImage, BufferedImage)} от {@code source} и того же фрактала,
+     * сохранённого в {@code TYPE_INT_RGB}. Каждая строка читается из {@code source} до записи в {@code target},
+     * поэтому {@code source} и {@code target} могут быть одним изображением. Генератор должен передать
+     * каждый пиксель ровно один раз; после отменённой генерации содержимое {@code target} не определено.
+     * </p>
+     *
+     * @param source изображение, альфа-канал которого сохраняется
+     * @param target изображение {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB} того же размера
+     * @return приёмник для {@code FractalRenderer#renderTo}
+     */
+    public static PixelSink xorSink(BufferedImage source, BufferedImage target) {
+        checkArgs(source, target);
+        IntRaster out = IntRaster.of(target);
+        if (out == null) {
+            throw new IllegalArgumentException("XOR sink requires TYPE_INT_RGB or TYPE_INT_ARGB target, got type "
+                    + target.getType());
+        }
+        IntRaster in = IntRaster.of(source);
+        int alphaMask = in != null ? in.alphaMask() : 0;
+        return (x, y, pixels, offset, length) -> {
+            int[] sourceData = in != null ? in.data() : source.getRGB(x, y, length, 1, null, 0, length);
+            int sourceOffset = in != null ? in.rowOffset(y) + x : 0;
+            xorRow(sourceData, sourceOffset, alphaMask, pixels, offset, out.data(), out.rowOffset(y) + x, length);
+        };
+    }
 
-                resultImage.setRGB(x, y, xorRGB);
+    private static void checkArgs(BufferedImage image1, BufferedImage image2) {
+        if (image1 == null || image2 == null) {
+            throw new IllegalArgumentException("Images cannot be null");
+        }
+        if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) {
+            throw new IllegalArgumentException("Images must have the same dimensions");
+        }
+    }
+
+    private static void xor(BufferedImage image1, BufferedImage image2, IntRaster out, ForkJoinPool parallel) {
+        int width = image1.getWidth();
+        RowBands.forEach(image1.getHeight(), width, (fromY, toY) -> {
+            IntRaster a = IntRaster.of(image1);
+            IntRaster b = IntRaster.of(image2);
+            // Типы без прямого доступа читаются построчно в буфер в формате getRGB
+            int[] aRow = a == null ? new int[width] : null;
+            int[] bRow = b == null ? new int[width] : null;
+            // getRGB уже возвращает альфа-канал, маска нужна только для массива TYPE_INT_RGB
+            int alphaMask = a != null ? a.alphaMask() : 0;
+            for (int y = fromY; y < toY; y++) {
+                int[] aData = a != null ? a.data() : image1.getRGB(0, y, width, 1, aRow, 0, width);
+                int aOffset = a != null ? a.rowOffset(y) : 0;
+                int[] bData = b != null ? b.data() : image2.getRGB(0, y, width, 1, bRow, 0, width);
+                int bOffset = b != null ? b.rowOffset(y) : 0;
+                xorRow(aData, aOffset, alphaMask, bData, bOffset, out.data(), out.rowOffset(y), width);
             }
+        }, parallel);
+    }
+
+    /**
+     * XOR строки: {@code out = (a ^ (b & 0x00FFFFFF)) | alphaMask}. Альфа-канал берётся из {@code a};
+     * {@code alphaMask = 0xFF000000} для непрозрачного первого изображения, иначе 0.
+     */
+    static void xorRow(int[] a, int aOffset, int alphaMask, int[] b, int bOffset,
+                       int[] out, int outOffset, int length) {
+        if (VECTOR_XOR_ROW != null) {
+            try {
+                VECTOR_XOR_ROW.invokeExact(a, aOffset, alphaMask, b, bOffset, out, outOffset, length);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = (a[aOffset + i] ^ (b[bOffset + i] & 0x00FFFFFF)) | alphaMask;
+        }
+    }
+
+    private static MethodHandle findVectorXorRow() {
+        if (!MandelbrotKernels.isVectorAvailable()) {
+            return null;
+        }
+        Class<?> type = MandelbrotKernels.findVectorClass("com.cipher.core.service.encryption.util.VectorXor");
+        if (type == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            int lanes = (int) lookup.findStatic(type, "laneCount", MethodType.methodType(int.class)).invokeExact();
+            if (lanes < 2) {
+                return null;
+            }
+            return lookup.findStatic(type, "xorRow", MethodType.methodType(void.class,
+                    int[].class, int.class, int.class, int[].class, int.class, int[].class, int.class, int.class));
+        } catch (Throwable e) {
+            return null;
         }
-        return resultImage;
     }
 }
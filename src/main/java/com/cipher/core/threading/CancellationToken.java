@@ -0,0 +1,30 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Признак отмены генерации, который проверяют рабочие потоки пула.
+ * <p>
+ * Прерывание ({@link Thread#interrupt()}) доходит только до потока, ожидающего результат,
+ * а тайлы в {@link RenderPool} продолжили бы считаться до конца. Ядро проверяет токен перед
+ * каждой строкой, а задачи ForkJoin — перед каждой областью, поэтому после {@link #cancel()}
+ * пул освобождается за время вычисления одной строки или тайла.
+ * </p>
+ * <p>
+ * Изображение, генерация которого была отменена, остаётся неполным и не должно использоваться.
+ * </p>
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Отменяет генерацию. Повторный вызов ничего не меняет.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
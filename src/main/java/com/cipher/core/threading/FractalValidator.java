@@ -0,0 +1,181 @@
+package com.cipher.core.threading;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Проверка качества фрактала для шифрования за один параллельный проход без выделения памяти на пиксель.
+ * <p>
+ * Критерии:
+ * <ul>
+ *   <li>доля внутренних пикселей (цвет 0x000040) не больше {@link #MAX_INTERIOR_RATIO};</li>
+ *   <li>тона внешних пикселей (без 0x000040 и 0x000000) занимают не меньше {@link #MIN_HUE_BINS}
+ *       из {@link #HUE_BINS} интервалов, и ни в одном интервале не больше {@link #MAX_HUE_BIN_RATIO}.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Массив пикселей делится на полосы, каждая полоса считает собственные счётчики, которые затем
+ * складываются. Тон вычисляется {@link #hueBin(int)} — той же арифметикой float, что и
+ * {@code Color.RGBtoHSB}, но без массива {@code float[3]} на каждый пиксель.
+ * </p>
+ */
+public final class FractalValidator {
+
+    public static final double MAX_INTERIOR_RATIO = 0.25;
+    public static final int HUE_BINS = 36;
+    public static final int MIN_HUE_BINS = 20;
+    public static final double MAX_HUE_BIN_RATIO = 0.25;
+
+    static final int INTERIOR_COLOR = 0x000040;
+
+    /** Индекс счётчика внутренних точек в массиве статистики, счётчики тонов идут перед ним. */
+    static final int INTERIOR_SLOT = HUE_BINS;
+
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+    private FractalValidator() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Проверяет пиксели изображения.
+     *
+     * @param pixels пиксели в формате (A)RGB
+     * @param pool   пул, в котором обрабатываются полосы
+     * @return true, если фрактал проходит оба критерия
+     */
+    public static boolean isValid(int[] pixels, ForkJoinPool pool) {
+        long[] stats = pool.invoke(new StatsTask(pixels, 0, pixels.length));
+        return isAcceptable(stats[INTERIOR_SLOT], pixels.length, stats);
+    }
+
+    /**
+     * Итоговое решение по накопленной статистике.
+     *
+     * @param interior    количество внутренних пикселей
+     * @param totalPixels количество пикселей изображения
+     * @param hueBins     счётчики интервалов тона, первые {@link #HUE_BINS} элементов
+     * @return true, если фрактал проходит оба критерия
+     */
+    static boolean isAcceptable(long interior, long totalPixels, long[] hueBins) {
+        // interior / total > 0.25 <=> interior * 4 > total: сравнение в целых без погрешности
+        if (interior * 4 > totalPixels) {
+            return false;
+        }
+
+        long considered = 0;
+        long maxCount = 0;
+        int nonEmpty = 0;
+        for (int bin = 0; bin < HUE_BINS; bin++) {
+            long count = hueBins[bin];
+            considered += count;
+            if (count > 0) nonEmpty++;
+            if (count > maxCount) maxCount = count;
+        }
+        if (considered == 0) {
+            return false;
+        }
+        double maxRatio = (double) maxCount / considered;
+        return nonEmpty >= MIN_HUE_BINS && maxRatio <= MAX_HUE_BIN_RATIO;
+    }
+
+    /**
+     * Добавляет пиксели {@code [from, to)} к статистике: {@link #HUE_BINS} счётчиков тона
+     * и счётчик внутренних точек в {@link #INTERIOR_SLOT}.
+     */
+    static void accumulate(int[] pixels, int from, int to, long[] stats) {
+        long interior = 0;
+        // Соседние пиксели фрактала часто одного цвета: тон последнего цвета запоминается
+        int lastRgb = -1;
+        int lastBin = -1;
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i] & 0x00FFFFFF;
+            if (rgb == INTERIOR_COLOR) {
+                interior++;
+                continue;
+            }
+            if (rgb != lastRgb) {
+                lastRgb = rgb;
+                lastBin = hueBin(rgb);
+            }
+            if (lastBin >= 0) {
+                stats[lastBin]++;
+            }
+        }
+        stats[INTERIOR_SLOT] += interior;
+    }
+
+    /**
+     * Вычисляет интервал тона цвета так же, как {@code (int) (Color.RGBtoHSB(r, g, b, hsb)[0] * HUE_BINS)}.
+     * Чёрный цвет пропускается; тон, округлившийся до 1.0f, выходит за последний интервал и
+     * тоже пропускается, как и в исходной проверке.
+     *
+     * @param rgb цвет без альфа-канала
+     * @return номер интервала или -1, если пиксель не учитывается
+     */
+    static int hueBin(int rgb) {
+        if (rgb == 0x000000) {
+            return -1;
+        }
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int cmax = Math.max(Math.max(r, g), b);
+        int cmin = Math.min(Math.min(r, g), b);
+        if (cmax == cmin) {
+            // Нулевая насыщенность: RGBtoHSB возвращает тон 0
+            return 0;
+        }
+
+        float range = (float) (cmax - cmin);
+        float redc = (float) (cmax - r) / range;
+        float greenc = (float) (cmax - g) / range;
+        float bluec = (float) (cmax - b) / range;
+        float hue;
+        if (r == cmax) {
+            hue = bluec - greenc;
+        } else if (g == cmax) {
+            hue = 2.0f + redc - bluec;
+        } else {
+            hue = 4.0f + greenc - redc;
+        }
+        hue = hue / 6.0f;
+        if (hue < 0) {
+            hue = hue + 1.0f;
+        }
+        int bin = (int) (hue * HUE_BINS);
+        return bin >= 0 && bin < HUE_BINS ? bin : -1;
+    }
+
+    private static final class StatsTask extends RecursiveTask<long[]> {
+
+        private final int[] pixels;
+        private final int from;
+        private final int to;
+
+        StatsTask(int[] pixels, int from, int to) {
+            this.pixels = pixels;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                long[] stats = new long[HUE_BINS + 1];
+                accumulate(pixels, from, to, stats);
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            StatsTask right = new StatsTask(pixels, mid, to);
+            right.fork();
+            long[] stats = new StatsTask(pixels, from, mid).compute();
+            long[] rightStats = right.join();
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] += rightStats[i];
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Ядро выборки для предварительной проверки фрактала: пиксель (x, y) выборки — это один пиксель
+ * полного изображения внутри ячейки {@code stride x stride} с левым верхним углом
+ * {@code (x * stride, y * stride)}, выбранный внутри ячейки псевдослучайно.
+ * <p>
+ * Точки считаются ядром полного изображения в его собственных координатах, поэтому цвет каждой точки
+ * выборки совпадает с цветом того же пикселя полного изображения. Выборка стратифицированная
+ * с дрожанием: по одной случайной точке в каждой ячейке. Её дисперсия не больше, чем у простой
+ * случайной выборки того же размера, так что биномиальные доверительные границы
+ * {@link RenderStats#isClearlyInvalid(double)} для неё консервативны, в отличие от регулярной сетки,
+ * которая может совпасть с периодической структурой фрактала.
+ * </p>
+ * <p>
+ * Положение точки в ячейке зависит только от {@code seed} и номера ячейки, поэтому ядро
+ * потокобезопасно, а одинаковые параметры дают одинаковую выборку.
+ * Крайние ячейки обрезаются по границам изображения.
+ * </p>
+ */
+public class JitteredSampleKernel implements MandelbrotKernel {
+
+    private final MandelbrotKernel full;
+    private final int stride;
+    private final long seed;
+    private final int sampleWidth;
+    private final int sampleHeight;
+
+    /**
+     * @param full   ядро полного изображения
+     * @param stride сторона ячейки, на одну точку выборки приходится {@code stride * stride} пикселей
+     * @param seed   зерно положения точек внутри ячеек
+     */
+    public JitteredSampleKernel(MandelbrotKernel full, int stride, long seed) {
+        if (full == null) {
+            throw new IllegalArgumentException("Kernel cannot be null");
+        }
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Stride must be positive: " + stride);
+        }
+        this.full = full;
+        this.stride = stride;
+        this.seed = seed;
+        this.sampleWidth = (full.imageWidth() + stride - 1) / stride;
+        this.sampleHeight = (full.imageHeight() + stride - 1) / stride;
+    }
+
+    @Override
+    public int imageWidth() {
+        return sampleWidth;
+    }
+
+    @Override
+    public int imageHeight() {
+        return sampleHeight;
+    }
+
+    @Override
+    public int maxIter() {
+        return full.maxIter();
+    }
+
+    @Override
+    public void iterateRow(int y, int fromX, int toX, int[] iters, double[] zx, double[] zy, int offset) {
+        int cellY = y * stride;
+        int cellHeight = Math.min(stride, full.imageHeight() - cellY);
+        for (int x = fromX; x < toX; x++) {
+            int cellX = x * stride;
+            int cellWidth = Math.min(stride, full.imageWidth() - cellX);
+            long hash = mix(seed ^ ((long) y << 32 | x & 0xFFFFFFFFL));
+            int px = cellX + (int) Long.remainderUnsigned(hash, cellWidth);
+            int py = cellY + (int) Long.remainderUnsigned(hash >>> 32, cellHeight);
+            full.iterateRow(py, px, px + 1, iters, zx, zy, offset + (x - fromX));
+        }
+    }
+
+    /**
+     * Финальное перемешивание SplitMix64.
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
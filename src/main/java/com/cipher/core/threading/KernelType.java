@@ -0,0 +1,13 @@
+package com.cipher.core.threading;
+
+/**
+ * Реализация ядра escape-time, используемая при генерации фрактала.
+ */
+public enum KernelType {
+    /** Скалярное эталонное ядро. */
+    SCALAR,
+    /** SIMD-ядро на Vector API; если модуль недоступен — скалярное. */
+    VECTOR,
+    /** SIMD-ядро, если платформа даёт не меньше двух дорожек, иначе скалярное. */
+    AUTO
+}
@@ -0,0 +1,37 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Ядро escape-time для множества Мандельброта: для каждой точки строки вычисляет,
+ * на какой итерации орбита покинула круг радиуса 2, и значение z в этот момент.
+ * <p>
+ * Ядро не занимается окрашиванием — цвета вычисляет {@link MandelbrotThread} по результатам ядра,
+ * поэтому любые реализации, дающие одинаковые {@code iters/zx/zy}, дают одинаковое изображение.
+ * Экземпляр привязан к параметрам одного изображения и должен быть потокобезопасным:
+ * разные строки вычисляются параллельно.
+ * </p>
+ *
+ * @see MandelbrotKernels
+ */
+public interface MandelbrotKernel {
+
+    int imageWidth();
+
+    int imageHeight();
+
+    int maxIter();
+
+    /**
+     * Выполняет итерации для пикселей строки {@code y} в диапазоне {@code [fromX, toX)}.
+     * Результат для пикселя {@code x} записывается в элемент {@code offset + (x - fromX)} массивов.
+     *
+     * @param y      координата строки
+     * @param fromX  первая координата X (включительно)
+     * @param toX    последняя координата X (исключительно)
+     * @param iters  оставшееся число итераций на момент выхода; 0 — точка внутренняя
+     * @param zx     реальная часть z на момент выхода
+     * @param zy     мнимая часть z на момент выхода
+     * @param offset индекс в массивах, соответствующий {@code fromX}
+     */
+    void iterateRow(int y, int fromX, int toX, int[] iters, double[] zx, double[] zy, int offset);
+}
@@ -0,0 +1,123 @@
+package com.cipher.core.threading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Фабрика ядер escape-time с выбором реализации во время выполнения.
+ * <p>
+ * SIMD-ядро требует модуль {@code jdk.incubator.vector} ({@code --add-modules jdk.incubator.vector}).
+ * Оно собирается отдельно от остального кода (исходники {@code src/vector/java}), и здесь на него
+ * нет ссылок во время компиляции: класс {@code VectorMandelbrotKernel} ищется по имени и загружается,
+ * только если модуль подключён. Иначе, как и при запуске толстого jar без этого флага, используется
+ * {@link ScalarMandelbrotKernel}.
+ * </p>
+ */
+public final class MandelbrotKernels {
+    private static final Logger logger = LoggerFactory.getLogger(MandelbrotKernels.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL_CLASS = "com.cipher.core.threading.VectorMandelbrotKernel";
+
+    /**
+     * Конструктор SIMD-ядра или {@code null}, если оно недоступно.
+     */
+    private static final MethodHandle VECTOR_KERNEL = findVectorKernel();
+    private static final int VECTOR_LANES = detectVectorLanes();
+
+    private MandelbrotKernels() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * @return true, если SIMD-ядро может быть использовано в текущем рантайме
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_LANES > 0;
+    }
+
+    /**
+     * Создаёт ядро для изображения с заданными параметрами.
+     *
+     * @param type        требуемая реализация
+     * @param imageWidth  ширина изображения
+     * @param imageHeight высота изображения
+     * @param ZOOM        уровень масштабирования
+     * @param MAX_ITER    максимальное количество итераций
+     * @param offsetX     смещение по оси X
+     * @param offsetY     смещение по оси Y
+     * @return ядро; при недоступности SIMD — скалярное
+     */
+    public static MandelbrotKernel create(KernelType type, int imageWidth, int imageHeight,
+                                          double ZOOM, int MAX_ITER, double offsetX, double offsetY) {
+        boolean useVector = switch (type) {
+            case SCALAR -> false;
+            case VECTOR -> isVectorAvailable();
+            case AUTO -> VECTOR_LANES >= 2;
+        };
+        if (useVector) {
+            try {
+                return (MandelbrotKernel) VECTOR_KERNEL.invoke(imageWidth, imageHeight, ZOOM, MAX_ITER, offsetX, offsetY);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Не удалось создать SIMD-ядро", e);
+            }
+        }
+        return new ScalarMandelbrotKernel(imageWidth, imageHeight, ZOOM, MAX_ITER, offsetX, offsetY);
+    }
+
+    /**
+     * Ищет класс из отдельно собранных SIMD-исходников, если модуль Vector API подключён.
+     *
+     * @param className полное имя класса
+     * @return класс или {@code null}, если модуль не подключён или класса нет в сборке
+     */
+    public static Class<?> findVectorClass(String className) {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException | LinkageError e) {
+            logger.warn("Не удалось загрузить {}: {}", className, e.toString());
+            return null;
+        }
+    }
+
+    private static MethodHandle findVectorKernel() {
+        Class<?> type = findVectorClass(VECTOR_KERNEL_CLASS);
+        if (type == null) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findConstructor(type, MethodType.methodType(void.class,
+                    int.class, int.class, double.class, int.class, double.class, double.class));
+        } catch (ReflectiveOperationException e) {
+            logger.warn("SIMD-ядро не подходит, используется скалярное: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static int detectVectorLanes() {
+        if (VECTOR_KERNEL == null) {
+            logger.info("SIMD-ядро недоступно (нужен {} в --add-modules), используется скалярное", VECTOR_MODULE);
+            return 0;
+        }
+        try {
+            int lanes = (int) MethodHandles.lookup()
+                    .findStatic(VECTOR_KERNEL.type().returnType(), "laneCount", MethodType.methodType(int.class))
+                    .invokeExact();
+            logger.info("SIMD-ядро доступно, дорожек: {}", lanes);
+            return lanes;
+        } catch (Throwable e) {
+            logger.warn("Не удалось загрузить SIMD-ядро, используется скалярное: {}", e.toString());
+            return 0;
+        }
+    }
+}
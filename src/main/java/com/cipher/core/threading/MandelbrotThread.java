@@ -2,8 +2,7 @@ package com.cipher.core.threading;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Arrays;
 
 /**
  * @author @dankotyt Danil Kotlyarov
@@ -20,12 +19,7 @@ public class MandelbrotThread implements Runnable {
     private final int startY;
     private final int width;
     private final int height;
-    private final double ZOOM;
-    private final int MAX_ITER;
-    private final double offsetX;
-    private final double offsetY;
-    private final BufferedImage image;
-    private static final Logger logger = Logger.getLogger(MandelbrotThread.class.getName());
+    private final RenderContext context;
 
     /**
      * Конструктор класса MandelbrotThread.
@@ -41,68 +35,75 @@ public class MandelbrotThread implements Runnable {
      * @param image Изображение для записи результатов.
      */
     public MandelbrotThread(int startX, int startY, int width, int height, double ZOOM, int MAX_ITER, double offsetX, double offsetY, BufferedImage image) {
+        this(startX, startY, width, height, new RenderContext(
+                new ScalarMandelbrotKernel(image.getWidth(), image.getHeight(), ZOOM, MAX_ITER, offsetX, offsetY),
+                PixelSinks.forImage(image), PaletteVersion.V1));
+    }
+
+    /**
+     * Конструктор класса MandelbrotThread с параметрами генерации.
+     *
+     * @param startX Начальная координата X для генерации.
+     * @param startY Начальная координата Y для генерации.
+     * @param width Ширина области для генерации.
+     * @param height Высота области для генерации.
+     * @param context Ядро, приёмник, палитра, статистика и признак отмены генерации.
+     */
+    public MandelbrotThread(int startX, int startY, int width, int height, RenderContext context) {
         this.startX = startX;
         this.startY = startY;
         this.width = width;
         this.height = height;
-        this.ZOOM = ZOOM;
-        this.MAX_ITER = MAX_ITER;
-        this.offsetX = offsetX;
-        this.offsetY = offsetY;
-        this.image = image;
+        this.context = context;
     }
 
     /**
      * Метод run выполняет генерацию части изображения множества Мандельброта.
-     * Для каждой точки (x, y) вычисляется количество итераций, после чего
-     * для внешних точек используется гладкое окрашивание (smooth coloring) на основе HSB,
+     * Для каждой точки (x, y) ядро вычисляет количество итераций, после чего
+     * для внешних точек используется гладкое окрашивание (smooth coloring) на основе HSB
+     * в выбранной версии палитры {@link PaletteVersion},
      * а для внутренних – фиксированный тёмно-синий цвет (0x000040).
+     * <p>
+     * Область заранее обрезается по границам изображения, а каждая строка сначала
+     * вычисляется в локальный буфер и затем передаётся в {@link PixelSink} одним вызовом.
+     * Если в контексте есть {@link RenderStats}, строка сразу добавляется к статистике, а после
+     * {@link RenderStats#isAborted()} оставшиеся строки не вычисляются. Так же генерация
+     * останавливается после {@link CancellationToken#cancel()}.
+     * Исключения ядра и приёмника не перехватываются: {@link RenderPool#invoke} сообщает о них
+     * через {@link java.util.concurrent.ExecutionException}, и вся генерация завершается ошибкой.
+     * </p>
      */
     @Override
     public void run() {
-        try {
-            int imageWidth = image.getWidth();
-            int imageHeight = image.getHeight();
-
-            int endX = Math.min(startX + width, imageWidth);
-            int endY = Math.min(startY + height, imageHeight);
-
-            int centerX = imageWidth / 2;
-            int centerY = imageHeight / 2;
-
-            for (int y = startY; y < endY; y++) {
-                for (int x = startX; x < endX; x++) {
-                    double zx = 0, zy = 0;
-                    double cX = (x - centerX) / ZOOM + offsetX;
-                    double cY = (y - centerY) / ZOOM + offsetY;
-                    int iter = MAX_ITER;
-
-                    while (zx * zx + zy * zy < 4 && iter > 0) {
-                        double tmp = zx * zx - zy * zy + cX;
-                        zy = 2.0 * zx * zy + cY;
-                        zx = tmp;
-                        iter--;
-                    }
+        MandelbrotKernel kernel = context.kernel();
+        RenderStats stats = context.stats();
+        int fromX = Math.max(startX, 0);
+        int fromY = Math.max(startY, 0);
+        int endX = Math.min(startX + width, kernel.imageWidth());
+        int endY = Math.min(startY + height, kernel.imageHeight());
+        if (fromX >= endX || fromY >= endY) {
+            return;
+        }
 
-                    int color;
-                    if (iter > 0) {
-                        // Внешняя точка – гладкий цвет на основе HSB
-                        color = getSmoothColor(iter, zx, zy, MAX_ITER);
-                    } else {
-                        // Внутренняя точка – тёмно-синий (соответствует MANDELBROT_COLOR)
-                        color = 0x000040;
-                    }
+        int length = endX - fromX;
+        int maxIter = kernel.maxIter();
+        int[] row = new int[length];
+        int[] iters = new int[length];
+        double[] zx = new double[length];
+        double[] zy = new double[length];
+        long[] rowStats = stats != null ? new long[FractalValidator.HUE_BINS + 1] : null;
 
-                    if (x >= 0 && x < imageWidth && y >= 0 && y < imageHeight) {
-                        image.setRGB(x, y, color);
-                    } else {
-                        logger.warning(String.format("Попытка записи за границы: x=%d, y=%d, размер=%dx%d",
-                                x, y, imageWidth, imageHeight));
-                    }
-                }
+        for (int y = fromY; y < endY; y++) {
+            if (context.isStopped()) {
+                return;
+            }
+            kernel.iterateRow(y, fromX, endX, iters, zx, zy, 0);
+            context.palette().colorRow(iters, zx, zy, maxIter, row, length, rowStats);
+            context.sink().putRow(fromX, y, row, 0, length);
+            if (rowStats != null) {
+                stats.add(rowStats);
+                Arrays.fill(rowStats, 0);
             }
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Ошибка в MandelbrotThread: " + e);
         }
     }
 
@@ -117,7 +118,7 @@ public class MandelbrotThread implements Runnable {
      * @param maxIter максимальное количество итераций
      * @return целочисленное представление цвета RGB
      */
-    private int getSmoothColor(int iter, double zx, double zy, int maxIter) {
+    static int getSmoothColor(int iter, double zx, double zy, int maxIter) {
         // Модуль комплексного числа z
         double modZ = Math.sqrt(zx * zx + zy * zy);
         // Предотвращаем логарифмирование нуля или слишком малых чисел
@@ -0,0 +1,93 @@
+package com.cipher.core.threading;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Задача ForkJoin для генерации прямоугольной области изображения множества Мандельброта.
+ * <p>
+ * Область рекурсивно делится пополам (по большей стороне, с выравниванием по размеру тайла),
+ * пока не станет не больше одного тайла. Листовые тайлы считаются тем же ядром, что и
+ * {@link MandelbrotThread}, поэтому результат попиксельно совпадает с генерацией полосами.
+ * Незанятые потоки пула забирают (work-stealing) ещё не начатые половины у загруженных,
+ * так что дорогие тайлы внутренней области не задерживают остальные ядра.
+ * В режиме {@link RenderMode#MARIANI_SILVER} листовой тайл считается {@link MarianiSilverTile}.
+ * Если в {@link RenderContext} есть {@link RenderStats} и она сообщает {@link RenderStats#isAborted()},
+ * ещё не начатые области пропускаются. Так же пропускаются области после
+ * {@link CancellationToken#cancel()}: отмена освобождает пул, не дожидаясь остальных тайлов.
+ * </p>
+ */
+public class MandelbrotTileTask extends RecursiveAction {
+
+    private final int startX;
+    private final int startY;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final RenderMode mode;
+    private final RenderContext context;
+
+    /**
+     * Конструктор задачи генерации области.
+     *
+     * @param startX Начальная координата X области.
+     * @param startY Начальная координата Y области.
+     * @param width Ширина области.
+     * @param height Высота области.
+     * @param tileSize Размер стороны листового тайла в пикселях.
+     * @param mode Способ обхода пикселей листового тайла.
+     * @param context Ядро, приёмник, палитра, статистика и признак отмены генерации.
+     */
+    public MandelbrotTileTask(int startX, int startY, int width, int height, int tileSize,
+                              RenderMode mode, RenderContext context) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.startX = startX;
+        this.startY = startY;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.mode = mode;
+        this.context = context;
+    }
+
+    @Override
+    protected void compute() {
+        if (context.isStopped()) {
+            return;
+        }
+        if (width <= tileSize && height <= tileSize) {
+            if (mode == RenderMode.MARIANI_SILVER) {
+                new MarianiSilverTile(startX, startY, width, height, context).run();
+            } else {
+                new MandelbrotThread(startX, startY, width, height, context).run();
+            }
+            return;
+        }
+
+        if (width >= height) {
+            int leftWidth = splitPoint(width);
+            invokeAll(
+                    subTask(startX, startY, leftWidth, height),
+                    subTask(startX + leftWidth, startY, width - leftWidth, height));
+        } else {
+            int topHeight = splitPoint(height);
+            invokeAll(
+                    subTask(startX, startY, width, topHeight),
+                    subTask(startX, startY + topHeight, width, height - topHeight));
+        }
+    }
+
+    /**
+     * Делит сторону пополам по границе тайлов, чтобы листья всегда совпадали с сеткой тайлов.
+     */
+    private int splitPoint(int length) {
+        int tiles = (length + tileSize - 1) / tileSize;
+        return (tiles / 2) * tileSize;
+    }
+
+    private MandelbrotTileTask subTask(int x, int y, int w, int h) {
+        return new MandelbrotTileTask(x, y, w, h, tileSize, mode, context);
+    }
+}
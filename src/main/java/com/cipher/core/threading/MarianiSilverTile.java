@@ -0,0 +1,201 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Генерация тайла множества Мандельброта разбиением Мариани–Сильвера.
+ * <p>
+ * Сначала вычисляется граница прямоугольника. Если все пиксели границы внутренние,
+ * прямоугольник целиком заливается цветом 0x000040 без итераций: множество Мандельброта
+ * связно и не имеет «дыр», поэтому внешняя точка не может оказаться внутри замкнутого контура
+ * внутренних точек. Иначе прямоугольник делится пополам по большей стороне (половины делят
+ * общую линию, уже вычисленные пиксели повторно не считаются), пока он не станет меньше
+ * {@link #MIN_SIZE}; такие прямоугольники считаются попиксельно.
+ * </p>
+ * <p>
+ * Заливаются только внутренние прямоугольники, внешние пиксели всегда итерируются ядром и
+ * окрашиваются выбранной версией палитры {@link PaletteVersion}.
+ * Граница проверяется по дискретным пикселям, поэтому нить внешней области тоньше пикселя,
+ * проходящая между ними, может быть залита: на отдельных кадрах несколько пикселей отличаются
+ * от {@link RenderMode#PLAIN}. Режим используется только для предпросмотра
+ * ({@code FractalRenderer#renderPreview}), ключевой поток для шифрования генерируется
+ * только в режиме {@link RenderMode#PLAIN}.
+ * </p>
+ * <p>
+ * Исключения ядра и приёмника не перехватываются и доходят до {@link RenderPool#invoke}.
+ * </p>
+ */
+public class MarianiSilverTile implements Runnable {
+
+    /**
+     * Минимальная сторона прямоугольника, который ещё имеет смысл делить.
+     */
+    static final int MIN_SIZE = 4;
+
+    private static final int INTERIOR_COLOR = 0x000040;
+    private static final byte UNKNOWN = 0;
+    private static final byte EXTERIOR = 1;
+    private static final byte INTERIOR = 2;
+
+    private final int startX;
+    private final int startY;
+    private final int width;
+    private final int height;
+    private final MandelbrotKernel kernel;
+    private final PaletteVersion palette;
+    private final RenderContext context;
+
+    private int fromX;
+    private int fromY;
+    private int tileWidth;
+    private int[] colors;
+    private byte[] state;
+    private int[] iters;
+    private double[] zx;
+    private double[] zy;
+
+    /**
+     * @param startX Начальная координата X области.
+     * @param startY Начальная координата Y области.
+     * @param width Ширина области.
+     * @param height Высота области.
+     * @param context Ядро, приёмник, палитра, статистика и признак отмены генерации;
+     *                отменённый тайл не записывается в приёмник.
+     */
+    public MarianiSilverTile(int startX, int startY, int width, int height, RenderContext context) {
+        this.startX = startX;
+        this.startY = startY;
+        this.width = width;
+        this.height = height;
+        this.kernel = context.kernel();
+        this.palette = context.palette();
+        this.context = context;
+    }
+
+    @Override
+    public void run() {
+        fromX = Math.max(startX, 0);
+        fromY = Math.max(startY, 0);
+        int endX = Math.min(startX + width, kernel.imageWidth());
+        int endY = Math.min(startY + height, kernel.imageHeight());
+        if (fromX >= endX || fromY >= endY || context.isStopped()) {
+            return;
+        }
+
+        tileWidth = endX - fromX;
+        int tileHeight = endY - fromY;
+        colors = new int[tileWidth * tileHeight];
+        state = new byte[tileWidth * tileHeight];
+        iters = new int[tileWidth];
+        zx = new double[tileWidth];
+        zy = new double[tileWidth];
+
+        subdivide(0, 0, tileWidth, tileHeight);
+        if (context.isCancelled()) {
+            return;
+        }
+
+        for (int y = 0; y < tileHeight; y++) {
+            context.sink().putRow(fromX, fromY + y, colors, y * tileWidth, tileWidth);
+        }
+        RenderStats stats = context.stats();
+        if (stats != null) {
+            // Залитые пиксели не проходят через палитру, статистика считается по готовым цветам
+            long[] tileStats = new long[FractalValidator.HUE_BINS + 1];
+            FractalValidator.accumulate(colors, 0, colors.length, tileStats);
+            stats.add(tileStats);
+        }
+    }
+
+    /**
+     * Обрабатывает прямоугольник [x0, x1) x [y0, y1) в координатах тайла.
+     */
+    private void subdivide(int x0, int y0, int x1, int y1) {
+        if (context.isCancelled()) {
+            return;
+        }
+        int w = x1 - x0;
+        int h = y1 - y0;
+        if (w < MIN_SIZE || h < MIN_SIZE) {
+            for (int y = y0; y < y1; y++) {
+                computeRun(y, x0, x1);
+            }
+            return;
+        }
+
+        computeRun(y0, x0, x1);
+        computeRun(y1 - 1, x0, x1);
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            computeRun(y, x0, x0 + 1);
+            computeRun(y, x1 - 1, x1);
+        }
+
+        if (isBorderInterior(x0, y0, x1, y1)) {
+            for (int y = y0 + 1; y < y1 - 1; y++) {
+                int row = y * tileWidth;
+                for (int x = x0 + 1; x < x1 - 1; x++) {
+                    colors[row + x] = INTERIOR_COLOR;
+                    state[row + x] = INTERIOR;
+                }
+            }
+            return;
+        }
+
+        if (w >= h) {
+            int mid = x0 + w / 2;
+            subdivide(x0, y0, mid + 1, y1);
+            subdivide(mid, y0, x1, y1);
+        } else {
+            int mid = y0 + h / 2;
+            subdivide(x0, y0, x1, mid + 1);
+            subdivide(x0, mid, x1, y1);
+        }
+    }
+
+    private boolean isBorderInterior(int x0, int y0, int x1, int y1) {
+        int top = y0 * tileWidth;
+        int bottom = (y1 - 1) * tileWidth;
+        for (int x = x0; x < x1; x++) {
+            if (state[top + x] != INTERIOR || state[bottom + x] != INTERIOR) {
+                return false;
+            }
+        }
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            int row = y * tileWidth;
+            if (state[row + x0] != INTERIOR || state[row + x1 - 1] != INTERIOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Итерирует ещё не вычисленные пиксели отрезка строки [x0, x1) непрерывными сериями.
+     */
+    private void computeRun(int y, int x0, int x1) {
+        int row = y * tileWidth;
+        int x = x0;
+        while (x < x1) {
+            if (state[row + x] != UNKNOWN) {
+                x++;
+                continue;
+            }
+            int runStart = x;
+            while (x < x1 && state[row + x] == UNKNOWN) {
+                x++;
+            }
+            int length = x - runStart;
+            kernel.iterateRow(fromY + y, fromX + runStart, fromX + x, iters, zx, zy, 0);
+            int maxIter = kernel.maxIter();
+            for (int i = 0; i < length; i++) {
+                int index = row + runStart + i;
+                if (iters[i] > 0) {
+                    colors[index] = palette.color(iters[i], zx[i], zy[i], maxIter);
+                    state[index] = EXTERIOR;
+                } else {
+                    colors[index] = INTERIOR_COLOR;
+                    state[index] = INTERIOR;
+                }
+            }
+        }
+    }
+}
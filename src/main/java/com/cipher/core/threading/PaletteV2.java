@@ -0,0 +1,116 @@
+package com.cipher.core.threading;
+
+import java.awt.*;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Палитра версии 2: та же схема «smooth coloring» в HSB, что и в
+ * {@link MandelbrotThread#getSmoothColor(int, double, double, int)}, но без трансцендентных
+ * функций на пиксель.
+ * <ul>
+ *   <li>{@code log|z|} считается как {@code ln(|z|²) / 2}, без {@code Math.sqrt};</li>
+ *   <li>натуральный логарифм берётся из таблицы мантисс с линейной интерполяцией,
+ *       порядок числа извлекается точно через {@link Math#getExponent(double)};</li>
+ *   <li>тон переводится в RGB по таблице из {@link #HUE_STEPS} значений
+ *       {@code Color.HSBtoRGB(h, 0.8f, 1.0f)}.</li>
+ * </ul>
+ * Для каждого значения таблицы заранее вычислен интервал тона {@link FractalValidator#hueBin(int)},
+ * поэтому гистограмма для проверки качества строится без обратного перевода RGB в HSB.
+ * <p>
+ * Таблицы строятся через {@link StrictMath}, а дальше используются только сложение и
+ * умножение, поэтому цвет не зависит от JIT-интринсиков и платформы — шифратор и дешифратор
+ * на разных машинах получают одинаковый ключевой поток.
+ * </p>
+ */
+final class PaletteV2 {
+
+    /** Количество значений тона в таблице перевода в RGB. */
+    static final int HUE_STEPS = 1 << 14;
+
+    private static final int MANTISSA_BITS = 10;
+    private static final int MANTISSA_STEPS = 1 << MANTISSA_BITS;
+
+    private static final double LN2 = StrictMath.log(2.0);
+    private static final double INV_LN2 = 1.0 / LN2;
+
+    private static final int[] HUE_TO_RGB = new int[HUE_STEPS];
+    private static final byte[] HUE_TO_BIN = new byte[HUE_STEPS];
+    private static final double[] LN_MANTISSA = new double[MANTISSA_STEPS + 1];
+
+    static {
+        for (int i = 0; i < HUE_STEPS; i++) {
+            HUE_TO_RGB[i] = Color.HSBtoRGB((float) i / HUE_STEPS, 0.8f, 1.0f);
+            HUE_TO_BIN[i] = (byte) FractalValidator.hueBin(HUE_TO_RGB[i] & 0x00FFFFFF);
+        }
+        for (int i = 0; i <= MANTISSA_STEPS; i++) {
+            LN_MANTISSA[i] = StrictMath.log(1.0 + (double) i / MANTISSA_STEPS);
+        }
+    }
+
+    private PaletteV2() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Вычисляет цвет внешней точки.
+     *
+     * @param iter    оставшееся количество итераций в момент выхода
+     * @param zx      реальная часть z в момент выхода
+     * @param zy      мнимая часть z в момент выхода
+     * @param maxIter максимальное количество итераций
+     * @return цвет в формате ARGB
+     */
+    static int color(int iter, double zx, double zy, int maxIter) {
+        return HUE_TO_RGB[hueIndex(iter, zx, zy, maxIter)];
+    }
+
+    /**
+     * Окрашивает строку и добавляет её пиксели к статистике проверки качества.
+     * Интервал тона берётся из таблицы по индексу тона, а не вычисляется по цвету.
+     */
+    static void colorRow(int[] iters, double[] zx, double[] zy, int maxIter, int[] row, int length, long[] stats) {
+        long interior = 0;
+        for (int i = 0; i < length; i++) {
+            if (iters[i] > 0) {
+                int index = hueIndex(iters[i], zx[i], zy[i], maxIter);
+                row[i] = HUE_TO_RGB[index];
+                int bin = HUE_TO_BIN[index];
+                if (bin >= 0) {
+                    stats[bin]++;
+                }
+            } else {
+                row[i] = FractalValidator.INTERIOR_COLOR;
+                interior++;
+            }
+        }
+        stats[FractalValidator.INTERIOR_SLOT] += interior;
+    }
+
+    /**
+     * @return индекс тона в таблице перевода в RGB
+     */
+    private static int hueIndex(int iter, double zx, double zy, int maxIter) {
+        // В момент выхода |z|² >= 4, ограничение защищает от некорректного ввода
+        double modZ2 = Math.max(zx * zx + zy * zy, 4.0);
+        double logModZ = 0.5 * ln(modZ2);
+        double smooth = iter + 1.0 - ln(logModZ) * INV_LN2;
+
+        double hue = 0.95 + 2.0 * (smooth / maxIter);
+        hue = hue - Math.floor(hue);
+        return (int) (hue * HUE_STEPS) & (HUE_STEPS - 1);
+    }
+
+    /**
+     * Натуральный логарифм положительного нормализованного числа по таблице мантисс.
+     * Абсолютная погрешность не превышает 2e-7.
+     */
+    static double ln(double value) {
+        int exponent = Math.getExponent(value);
+        double mantissa = Math.scalb(value, -exponent);
+        double t = (mantissa - 1.0) * MANTISSA_STEPS;
+        int index = (int) t;
+        double fraction = t - index;
+        double low = LN_MANTISSA[index];
+        return exponent * LN2 + low + fraction * (LN_MANTISSA[index + 1] - low);
+    }
+}
@@ -0,0 +1,114 @@
+package com.cipher.core.threading;
+
+/**
+ * Версия палитры гладкого окрашивания внешних точек фрактала.
+ * <p>
+ * Версия записывается в заголовок зашифрованного файла: от неё зависит ключевой поток XOR,
+ * поэтому дешифратор обязан окрашивать фрактал той же версией, что и шифратор.
+ * </p>
+ */
+public enum PaletteVersion {
+    /**
+     * Исходная палитра: {@code Math.sqrt}, два {@code Math.log} и {@code Color.HSBtoRGB} на пиксель.
+     * Используется для всех файлов, записанных до появления версии в заголовке.
+     */
+    V1(1) {
+        @Override
+        public int color(int iter, double zx, double zy, int maxIter) {
+            return MandelbrotThread.getSmoothColor(iter, zx, zy, maxIter);
+        }
+    },
+    /**
+     * Табличная палитра {@link PaletteV2}: логарифмы и перевод тона в RGB берутся из
+     * предвычисленных таблиц.
+     */
+    V2(2) {
+        @Override
+        public int color(int iter, double zx, double zy, int maxIter) {
+            return PaletteV2.color(iter, zx, zy, maxIter);
+        }
+
+        @Override
+        void colorRow(int[] iters, double[] zx, double[] zy, int maxIter, int[] row, int length, long[] stats) {
+            if (stats == null) {
+                super.colorRow(iters, zx, zy, maxIter, row, length, null);
+            } else {
+                PaletteV2.colorRow(iters, zx, zy, maxIter, row, length, stats);
+            }
+        }
+    };
+
+    /**
+     * Версия, которой окрашиваются новые зашифрованные файлы.
+     */
+    public static final PaletteVersion CURRENT = V2;
+
+    private final int code;
+
+    PaletteVersion(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return код версии, записываемый в заголовок файла
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Вычисляет цвет внешней точки.
+     *
+     * @param iter    оставшееся количество итераций в момент выхода (больше нуля)
+     * @param zx      реальная часть z в момент выхода
+     * @param zy      мнимая часть z в момент выхода
+     * @param maxIter максимальное количество итераций
+     * @return цвет в формате ARGB
+     */
+    public abstract int color(int iter, double zx, double zy, int maxIter);
+
+    /**
+     * Окрашивает строку по результатам ядра: внешние точки — {@link #color}, внутренние — 0x000040.
+     * Если {@code stats} не {@code null}, к нему добавляются количество внутренних точек и
+     * интервалы тона внешних точек в раскладке {@link FractalValidator}; интервалы совпадают
+     * с {@link FractalValidator#hueBin(int)} итогового цвета.
+     *
+     * @param iters  оставшееся число итераций, 0 — точка внутренняя
+     * @param zx     реальная часть z на момент выхода
+     * @param zy     мнимая часть z на момент выхода
+     * @param maxIter максимальное количество итераций
+     * @param row    буфер для цветов строки
+     * @param length количество пикселей строки
+     * @param stats  локальные счётчики статистики или {@code null}
+     */
+    void colorRow(int[] iters, double[] zx, double[] zy, int maxIter, int[] row, int length, long[] stats) {
+        for (int i = 0; i < length; i++) {
+            if (iters[i] > 0) {
+                // Внешняя точка – гладкий цвет на основе HSB
+                row[i] = color(iters[i], zx[i], zy[i], maxIter);
+            } else {
+                // Внутренняя точка – тёмно-синий (соответствует MANDELBROT_COLOR)
+                row[i] = FractalValidator.INTERIOR_COLOR;
+            }
+        }
+        if (stats != null) {
+            FractalValidator.accumulate(row, 0, length, stats);
+        }
+    }
+
+    /**
+     * Находит версию по коду из заголовка файла.
+     *
+     * @param code код версии
+     * @return версия палитры
+     * @throws IllegalArgumentException если код неизвестен
+     */
+    public static PaletteVersion fromCode(int code) {
+        for (PaletteVersion version : values()) {
+            if (version.code == code) {
+                return version;
+            }
+        }
+        throw new IllegalArgumentException("Unknown palette version: " + code);
+    }
+}
@@ -0,0 +1,34 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Приёмник пикселей, в который ядро генерации фрактала записывает готовые строки.
+ * <p>
+ * Ядро вычисляет цвета строки тайла в собственный буфер и передаёт их одним вызовом,
+ * поэтому приёмник может копировать данные целиком ({@code System.arraycopy}, {@code IntBuffer.put})
+ * без попиксельных вызовов {@code setRGB}. Значения пикселей — ARGB в том виде, в каком их возвращает
+ * ядро: внешние точки непрозрачны, внутренние — {@code 0x000040}.
+ * </p>
+ * <p>
+ * Разные тайлы пишутся параллельно из разных потоков, но никогда не пересекаются,
+ * поэтому реализация должна лишь допускать одновременную запись в непересекающиеся области.
+ * Каждый пиксель завершённой генерации передаётся ровно один раз, поэтому приёмник может не только
+ * копировать, но и накапливать значения, например XOR-ить их с другим изображением.
+ * </p>
+ *
+ * @see PixelSinks
+ */
+@FunctionalInterface
+public interface PixelSink {
+
+    /**
+     * Записывает {@code length} пикселей строки {@code y}, начиная с координаты {@code x}.
+     *
+     * @param x      координата X первого пикселя в целевом изображении
+     * @param y      координата Y строки в целевом изображении
+     * @param pixels буфер с цветами пикселей
+     * @param offset индекс первого пикселя в {@code pixels}
+     * @param length количество пикселей
+     */
+    void putRow(int x, int y, int[] pixels, int offset, int length);
+}
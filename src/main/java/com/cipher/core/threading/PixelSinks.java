@@ -0,0 +1,97 @@
+package com.cipher.core.threading;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Фабрика стандартных реализаций {@link PixelSink}.
+ */
+public final class PixelSinks {
+
+    private PixelSinks() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Создаёт приёмник, пишущий напрямую в массив {@link DataBufferInt} изображения по смещению строки.
+     * <p>
+     * Для {@code TYPE_INT_RGB} альфа-канал отбрасывается так же, как это делал {@code setRGB},
+     * поэтому содержимое растра совпадает побитово. Изображения других типов записываются
+     * через {@code setRGB} построчно.
+     * </p>
+     *
+     * @param image целевое изображение
+     * @return приёмник пикселей
+     */
+    public static PixelSink forImage(BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("Image cannot be null");
+        }
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dataBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+            int[] data = dataBuffer.getData();
+            int scanline = sampleModel.getScanlineStride();
+            int offset = dataBuffer.getOffset()
+                    - raster.getSampleModelTranslateY() * scanline
+                    - raster.getSampleModelTranslateX();
+            int mask = type == BufferedImage.TYPE_INT_RGB ? 0x00FFFFFF : 0xFFFFFFFF;
+            return new IntArraySink(data, offset, scanline, mask);
+        }
+        return (x, y, pixels, offset, length) -> image.setRGB(x, y, length, 1, pixels, offset, length);
+    }
+
+    /**
+     * Создаёт приёмник поверх массива, переданного вызывающим кодом.
+     * Пиксель (x, y) записывается в {@code data[offset + y * scanline + x]} без изменений.
+     *
+     * @param data     целевой массив
+     * @param offset   индекс пикселя (0, 0)
+     * @param scanline длина строки в элементах массива
+     * @return приёмник пикселей
+     */
+    public static PixelSink forArray(int[] data, int offset, int scanline) {
+        if (data == null) {
+            throw new IllegalArgumentException("Array cannot be null");
+        }
+        return new IntArraySink(data, offset, scanline, 0xFFFFFFFF);
+    }
+
+    /**
+     * Создаёт приёмник поверх {@link IntBuffer}, например буфера JavaFX {@code PixelBuffer}.
+     * Используются абсолютные операции записи, поэтому позиция буфера не меняется
+     * и запись из нескольких потоков безопасна.
+     *
+     * @param buffer   целевой буфер
+     * @param offset   индекс пикселя (0, 0)
+     * @param scanline длина строки в элементах буфера
+     * @return приёмник пикселей
+     */
+    public static PixelSink forBuffer(IntBuffer buffer, int offset, int scanline) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        return (x, y, pixels, srcOffset, length) ->
+                buffer.put(offset + y * scanline + x, pixels, srcOffset, length);
+    }
+
+    private record IntArraySink(int[] data, int offset, int scanline, int mask) implements PixelSink {
+        @Override
+        public void putRow(int x, int y, int[] pixels, int srcOffset, int length) {
+            int dst = offset + y * scanline + x;
+            if (mask == 0xFFFFFFFF) {
+                System.arraycopy(pixels, srcOffset, data, dst, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    data[dst + i] = pixels[srcOffset + i] & mask;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.cipher.core.threading;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Пул массивов пикселей {@code int[]}, сгруппированных по длине.
+ * <p>
+ * Подбор фрактала делает до 50 попыток размером с исходное изображение, а XOR и перемешивание
+ * создают ещё несколько полноразмерных ARGB-изображений. Для больших фотографий это сотни мегабайт
+ * короткоживущих массивов и полные сборки мусора. Генератор, XOR и перемешивание берут растры
+ * из пула и возвращают те, которые больше никому не нужны.
+ * </p>
+ * <ul>
+ *   <li>Массивы выдаются заполненными нулями, как новые {@code int[]}.</li>
+ *   <li>Суммарный размер хранимых массивов не превышает {@code maxPooledBytes}. Если возвращаемый массив
+ *       не помещается, из пула вытесняются массивы других длин, а если и этого мало, массив отбрасывается.</li>
+ *   <li>Изображения из {@link #acquireImage(int, int, int)} — обычные {@code TYPE_INT_RGB} или
+ *       {@code TYPE_INT_ARGB} поверх массива из пула.</li>
+ *   <li>Возвращать можно только массивы и изображения, на которые больше нет ссылок. Повторный возврат
+ *       одного и того же массива не обнаруживается.</li>
+ * </ul>
+ */
+@Component
+public class RasterPool implements MeterBinder {
+
+    /**
+     * Предел размера пула по умолчанию, не больше четверти кучи.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 256L << 20;
+
+    private static final DirectColorModel RGB_MODEL = new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF);
+
+    private final long maxPooledBytes;
+    private final Map<Integer, Deque<int[]>> free = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    public RasterPool() {
+        this(Math.min(DEFAULT_MAX_POOLED_BYTES, Runtime.getRuntime().maxMemory() / 4));
+    }
+
+    /**
+     * @param maxPooledBytes предел суммарного размера хранимых массивов в байтах; 0 отключает пул
+     */
+    public RasterPool(long maxPooledBytes) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("Max pooled bytes must not be negative: " + maxPooledBytes);
+        }
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Выдаёт массив заданной длины, заполненный нулями.
+     *
+     * @param length количество пикселей
+     * @return массив из пула или новый массив
+     */
+    public int[] acquire(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Raster length must be positive: " + length);
+        }
+        Deque<int[]> bucket = free.get(length);
+        int[] raster = bucket != null ? bucket.pollFirst() : null;
+        if (raster == null) {
+            misses.increment();
+            return new int[length];
+        }
+        pooledBytes.addAndGet(-bytes(raster));
+        hits.increment();
+        Arrays.fill(raster, 0);
+        return raster;
+    }
+
+    /**
+     * Возвращает массив в пул. После вызова массив нельзя использовать.
+     *
+     * @param raster массив или {@code null}
+     */
+    public void release(int[] raster) {
+        if (raster == null || raster.length == 0) {
+            return;
+        }
+        long size = bytes(raster);
+        if (size > maxPooledBytes || !reserve(size, raster.length)) {
+            discarded.increment();
+            return;
+        }
+        free.computeIfAbsent(raster.length, k -> new ConcurrentLinkedDeque<>()).offerFirst(raster);
+    }
+
+    /**
+     * Выдаёт изображение поверх массива из пула, заполненное нулями.
+     *
+     * @param width  ширина изображения
+     * @param height высота изображения
+     * @param type   {@link BufferedImage#TYPE_INT_RGB} или {@link BufferedImage#TYPE_INT_ARGB}
+     * @return изображение заданного типа
+     */
+    public BufferedImage acquireImage(int width, int height, int type) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be positive");
+        }
+        ColorModel model = switch (type) {
+            case BufferedImage.TYPE_INT_RGB -> RGB_MODEL;
+            case BufferedImage.TYPE_INT_ARGB -> ColorModel.getRGBdefault();
+            default -> throw new IllegalArgumentException("Unsupported image type: " + type);
+        };
+        long length = (long) width * height;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image is too large: " + width + "x" + height);
+        }
+        int[] data = acquire((int) length);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(data, data.length),
+                width, height, width, ((DirectColorModel) model).getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Возвращает в пул массив пикселей изображения. Подизображения и изображения, чей массив
+     * длиннее самого изображения, не принимаются, так как массив может быть общим.
+     * После вызова изображение нельзя использовать.
+     *
+     * @param image изображение или {@code null}
+     */
+    public void release(BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || !(raster.getDataBuffer() instanceof DataBufferInt buffer)
+                || buffer.getNumBanks() != 1) {
+            return;
+        }
+        int[] data = buffer.getData();
+        if (data.length == (long) image.getWidth() * image.getHeight()) {
+            release(data);
+        }
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * Резервирует место под массив, при необходимости вытесняя массивы других длин.
+     */
+    private boolean reserve(long size, int length) {
+        while (true) {
+            long current = pooledBytes.get();
+            if (current + size <= maxPooledBytes) {
+                if (pooledBytes.compareAndSet(current, current + size)) {
+                    return true;
+                }
+                continue;
+            }
+            if (!evictOther(length)) {
+                return false;
+            }
+        }
+    }
+
+    private boolean evictOther(int keepLength) {
+        for (Map.Entry<Integer, Deque<int[]>> entry : free.entrySet()) {
+            if (entry.getKey() == keepLength) {
+                continue;
+            }
+            int[] victim = entry.getValue().pollLast();
+            if (victim != null) {
+                pooledBytes.addAndGet(-bytes(victim));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long bytes(int[] raster) {
+        return (long) raster.length * Integer.BYTES;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mandelbrot.raster.pool.bytes", this, RasterPool::getPooledBytes)
+                .description("Суммарный размер растров в пуле")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.raster.pool.hits", hits, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.raster.pool.misses", misses, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.raster.pool.discarded", discarded, LongAdder::sum)
+                .register(registry);
+    }
+}
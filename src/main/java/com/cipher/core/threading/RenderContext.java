@@ -0,0 +1,52 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Общие параметры одной генерации, которые передаются всем её тайлам и строкам без изменений.
+ * <p>
+ * {@link MandelbrotTileTask}, {@link MandelbrotThread} и {@link MarianiSilverTile} получают контекст
+ * целиком, поэтому новая настройка генерации добавляется сюда, а не очередным конструктором.
+ * </p>
+ *
+ * @param kernel  ядро escape-time с параметрами изображения
+ * @param sink    приёмник, в который построчно записываются цвета пикселей
+ * @param palette версия палитры окрашивания внешних точек
+ * @param stats   статистика для проверки качества или {@code null}
+ * @param token   признак отмены генерации или {@code null}
+ */
+public record RenderContext(MandelbrotKernel kernel, PixelSink sink, PaletteVersion palette,
+                            RenderStats stats, CancellationToken token) {
+
+    public RenderContext {
+        if (kernel == null) {
+            throw new IllegalArgumentException("Kernel cannot be null");
+        }
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        if (palette == null) {
+            throw new IllegalArgumentException("Palette version cannot be null");
+        }
+    }
+
+    /**
+     * Контекст без статистики и без возможности отмены.
+     */
+    public RenderContext(MandelbrotKernel kernel, PixelSink sink, PaletteVersion palette) {
+        this(kernel, sink, palette, null, null);
+    }
+
+    /**
+     * @return true, если генерация отменена или статистика уже сообщила, что фрактал не подходит
+     */
+    public boolean isStopped() {
+        return isCancelled() || (stats != null && stats.isAborted());
+    }
+
+    /**
+     * @return true, если генерация отменена через {@link CancellationToken#cancel()}
+     */
+    public boolean isCancelled() {
+        return token != null && token.isCancelled();
+    }
+}
@@ -0,0 +1,16 @@
+package com.cipher.core.threading;
+
+/**
+ * Способ обхода пикселей тайла при генерации фрактала.
+ */
+public enum RenderMode {
+    /** Каждый пиксель итерируется ядром. */
+    PLAIN,
+    /**
+     * Разбиение Мариани–Сильвера: прямоугольник, вся граница которого лежит во внутренней
+     * области, заливается цветом 0x000040 без итераций. Внешние пиксели считаются ядром.
+     * Не гарантирует побитового совпадения с {@link #PLAIN}, поэтому используется только для предпросмотра
+     * ({@code FractalRenderer#renderPreview}) и не используется для шифрования.
+     */
+    MARIANI_SILVER
+}
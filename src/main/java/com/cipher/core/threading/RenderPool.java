@@ -0,0 +1,206 @@
+package com.cipher.core.threading;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Долгоживущий общий пул потоков для генерации фракталов.
+ * <p>
+ * Раньше каждый вызов генерации создавал и уничтожал собственный пул, а
+ * {@code generateUntilGood} делает до 50 вызовов подряд. Этот пул создаётся один раз
+ * на весь контекст Spring и используется генерацией изображений, дешифрованием и предпросмотром.
+ * </p>
+ * <ul>
+ *   <li>Потоки именуются {@value #THREAD_NAME_PREFIX}N и являются демонами.</li>
+ *   <li>Одновременно выполняется не более {@code maxConcurrentJobs} задач генерации; остальные
+ *       вызывающие потоки ждут своей очереди (FIFO), поэтому очередь пула не растёт без ограничений.</li>
+ *   <li>Метрики пула публикуются в Micrometer с префиксом {@code mandelbrot.render}.</li>
+ * </ul>
+ */
+@Component
+public class RenderPool implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(RenderPool.class);
+
+    public static final String THREAD_NAME_PREFIX = "mandelbrot-render-";
+    public static final int DEFAULT_MAX_CONCURRENT_JOBS = 4;
+
+    private final ForkJoinPool pool;
+    private final Semaphore admission;
+    private final int maxConcurrentJobs;
+
+    private final LongAdder submittedJobs = new LongAdder();
+    private final LongAdder completedJobs = new LongAdder();
+    private final LongAdder failedJobs = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    public RenderPool() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_CONCURRENT_JOBS);
+    }
+
+    /**
+     * @param parallelism       количество рабочих потоков
+     * @param maxConcurrentJobs максимальное число одновременно выполняемых задач генерации
+     */
+    public RenderPool(int parallelism, int maxConcurrentJobs) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (maxConcurrentJobs <= 0) {
+            throw new IllegalArgumentException("Max concurrent jobs must be positive: " + maxConcurrentJobs);
+        }
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.admission = new Semaphore(maxConcurrentJobs, true);
+        this.pool = new ForkJoinPool(parallelism, RenderPool::newWorker,
+                (t, e) -> logger.error("Необработанное исключение в потоке генерации {}: {}", t.getName(), e.getMessage(), e),
+                false);
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName(THREAD_NAME_PREFIX + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Выполняет задачу в пуле и ждёт её завершения.
+     * Если уже выполняется {@code maxConcurrentJobs} задач, вызывающий поток ждёт освобождения места.
+     * <p>
+     * Место освобождается только после того, как задача действительно закончилась в пуле. Если
+     * вызывающий поток прерван во время ожидания, задача отменяется, но уже начатая генерация
+     * дорабатывает и занимает место до своего завершения: так одновременно никогда не выполняется
+     * больше {@code maxConcurrentJobs} задач.
+     * </p>
+     *
+     * @param task задача генерации
+     * @return результат задачи
+     * @throws InterruptedException если поток был прерван во время ожидания
+     * @throws ExecutionException   если задача завершилась с исключением
+     */
+    public <T> T invoke(ForkJoinTask<T> task) throws InterruptedException, ExecutionException {
+        admission.acquire();
+        submittedJobs.increment();
+        ForkJoinTask<T> admitted;
+        try {
+            admitted = pool.submit(new AdmittedTask<>(task));
+        } catch (RuntimeException e) {
+            failedJobs.increment();
+            admission.release();
+            throw e;
+        }
+        try {
+            T result = admitted.get();
+            completedJobs.increment();
+            return result;
+        } catch (InterruptedException e) {
+            // Отменяется сама задача, а не обёртка: обёртка всё равно выполнится и вернёт место
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException | RuntimeException e) {
+            failedJobs.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Обёртка, которая держит место в {@link #admission}, пока задача выполняется в пуле.
+     * Отменённая до запуска задача завершается сразу, и место освобождается.
+     */
+    private final class AdmittedTask<T> extends RecursiveTask<T> {
+        private final ForkJoinTask<T> task;
+
+        AdmittedTask(ForkJoinTask<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        protected T compute() {
+            long start = System.nanoTime();
+            try {
+                return task.invoke();
+            } finally {
+                busyNanos.add(System.nanoTime() - start);
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Возвращает пул ForkJoin для задач, порождаемых изнутри уже запущенной генерации.
+     */
+    public ForkJoinPool forkJoinPool() {
+        return pool;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getActiveJobs() {
+        return maxConcurrentJobs - admission.availablePermits();
+    }
+
+    public int getWaitingJobs() {
+        return admission.getQueueLength();
+    }
+
+    public long getSubmittedJobs() {
+        return submittedJobs.sum();
+    }
+
+    public long getCompletedJobs() {
+        return completedJobs.sum();
+    }
+
+    public long getFailedJobs() {
+        return failedJobs.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mandelbrot.render.pool.parallelism", pool, ForkJoinPool::getParallelism)
+                .description("Количество рабочих потоков пула генерации")
+                .register(registry);
+        Gauge.builder("mandelbrot.render.pool.active.threads", pool, ForkJoinPool::getActiveThreadCount)
+                .register(registry);
+        Gauge.builder("mandelbrot.render.pool.queued.tasks", pool, ForkJoinPool::getQueuedTaskCount)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.render.pool.steals", pool, ForkJoinPool::getStealCount)
+                .register(registry);
+        Gauge.builder("mandelbrot.render.jobs.active", this, RenderPool::getActiveJobs)
+                .register(registry);
+        Gauge.builder("mandelbrot.render.jobs.waiting", this, RenderPool::getWaitingJobs)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.render.jobs.submitted", submittedJobs, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.render.jobs.completed", completedJobs, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.render.jobs.failed", failedJobs, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("mandelbrot.render.jobs.busy.seconds", busyNanos, n -> n.sum() / 1e9)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Пул генерации не завершился за 5 секунд");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
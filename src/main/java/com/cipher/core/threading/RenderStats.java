@@ -0,0 +1,157 @@
+package com.cipher.core.threading;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.cipher.core.threading.FractalValidator.HUE_BINS;
+import static com.cipher.core.threading.FractalValidator.INTERIOR_SLOT;
+import static com.cipher.core.threading.FractalValidator.MAX_HUE_BIN_RATIO;
+import static com.cipher.core.threading.FractalValidator.MAX_INTERIOR_RATIO;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Статистика для проверки качества фрактала, которую ядро генерации накапливает попутно
+ * с окрашиванием: количество внутренних точек и гистограмма тонов по {@link FractalValidator#HUE_BINS}
+ * интервалам.
+ * <p>
+ * Критерии и интервалы тона совпадают с {@link FractalValidator}: интервал определяется по итоговому
+ * цвету пикселя той же арифметикой, что и {@code Color.RGBtoHSB}, поэтому решение {@link #isValid()}
+ * совпадает с проверкой готового изображения без отдельного прохода по пикселям.
+ * </p>
+ * <p>
+ * Количество внутренних точек только растёт, поэтому как только оно превысило четверть
+ * изображения, результат проверки известен и {@link #isAborted()} останавливает генерацию.
+ * Распределение тонов можно оценить только по всему изображению. Для разреженной выборки
+ * статистика создаётся без досрочного прерывания, а решение принимается по доверительным
+ * границам {@link #isClearlyInvalid(double)}.
+ * </p>
+ * <p>
+ * Тайлы считают строки параллельно: каждая строка считается локально,
+ * а затем добавляется в общие атомарные счётчики через {@link #add(long[])}.
+ * </p>
+ */
+public class RenderStats {
+
+    private final long totalPixels;
+    private final boolean abortEarly;
+    private final AtomicLong interiorCount = new AtomicLong();
+    private final AtomicLongArray hueBins = new AtomicLongArray(HUE_BINS);
+    private volatile boolean aborted;
+
+    /**
+     * @param totalPixels количество пикселей всего изображения
+     */
+    public RenderStats(long totalPixels) {
+        this(totalPixels, true);
+    }
+
+    /**
+     * @param totalPixels количество пикселей всего изображения
+     * @param abortEarly  прерывать ли генерацию при превышении доли внутренних точек;
+     *                    для выборочной оценки статистика нужна по всей выборке
+     */
+    public RenderStats(long totalPixels, boolean abortEarly) {
+        if (totalPixels <= 0) {
+            throw new IllegalArgumentException("Total pixels must be positive: " + totalPixels);
+        }
+        this.totalPixels = totalPixels;
+        this.abortEarly = abortEarly;
+    }
+
+    /**
+     * Добавляет локальные счётчики строки или тайла.
+     *
+     * @param local {@link FractalValidator#HUE_BINS} счётчиков тона и счётчик внутренних точек
+     *              в элементе {@code HUE_BINS}
+     */
+    void add(long[] local) {
+        long interior = local[INTERIOR_SLOT];
+        // interior / total > 0.25 <=> interior * 4 > total: сравнение в целых без погрешности
+        if (interior > 0 && interiorCount.addAndGet(interior) * 4 > totalPixels && abortEarly) {
+            aborted = true;
+        }
+        for (int bin = 0; bin < HUE_BINS; bin++) {
+            if (local[bin] != 0) {
+                hueBins.addAndGet(bin, local[bin]);
+            }
+        }
+    }
+
+    /**
+     * @return true, если внутренних пикселей уже больше допустимого и генерацию следует прервать
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Итоговое решение проверки. Вызывается после завершения генерации.
+     *
+     * @return true, если фрактал проходит оба критерия
+     */
+    public boolean isValid() {
+        return !aborted && FractalValidator.isAcceptable(interiorCount.get(), totalPixels, getHueBins());
+    }
+
+    /**
+     * Оценивает по выборке, пройдёт ли проверку всё изображение, из которого выборка взята.
+     * <p>
+     * Доля внутренних точек и доля самого заполненного интервала тона считаются биномиальными
+     * оценками; фрактал признаётся заведомо неподходящим, только если нижняя граница
+     * {@code confidenceZ}-сигмового интервала хотя бы одной из долей выше допустимой.
+     * Число занятых интервалов по выборке не оценивается: на полном изображении их может
+     * быть только больше.
+     * </p>
+     * <p>
+     * Границы верны для случайной выборки, например {@link JitteredSampleKernel}; регулярная сетка
+     * может совпасть со структурой фрактала. Оценка статистическая: ошибочный отказ стоит лишней
+     * попытки, а принимается фрактал только по {@link #isValid()} полного изображения.
+     * </p>
+     *
+     * @param confidenceZ ширина доверительного интервала в стандартных отклонениях
+     * @return true, если полное изображение с высокой вероятностью не пройдёт проверку
+     */
+    public boolean isClearlyInvalid(double confidenceZ) {
+        if (lowerBound(interiorCount.get(), totalPixels, confidenceZ) > MAX_INTERIOR_RATIO) {
+            return true;
+        }
+
+        long considered = 0;
+        long maxCount = 0;
+        for (int bin = 0; bin < HUE_BINS; bin++) {
+            long count = hueBins.get(bin);
+            considered += count;
+            if (count > maxCount) maxCount = count;
+        }
+        return considered > 0 && lowerBound(maxCount, considered, confidenceZ) > MAX_HUE_BIN_RATIO;
+    }
+
+    /**
+     * Нижняя граница доли по нормальному приближению; дисперсия не меньше {@code 1/n},
+     * чтобы при долях около 0 и 1 интервал не вырождался в точку.
+     */
+    private static double lowerBound(long hits, long samples, double z) {
+        double p = (double) hits / samples;
+        double variance = Math.max(p * (1 - p), 1.0 / samples);
+        return p - z * Math.sqrt(variance / samples);
+    }
+
+    public long getTotalPixels() {
+        return totalPixels;
+    }
+
+    public long getInteriorCount() {
+        return interiorCount.get();
+    }
+
+    /**
+     * @return копия счётчиков интервалов тона
+     */
+    public long[] getHueBins() {
+        long[] bins = new long[HUE_BINS];
+        for (int bin = 0; bin < HUE_BINS; bin++) {
+            bins[bin] = hueBins.get(bin);
+        }
+        return bins;
+    }
+}
@@ -0,0 +1,77 @@
+package com.cipher.core.threading;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Параллельная обработка изображения полосами строк в пуле ForkJoin.
+ * <p>
+ * Строки делятся пополам, пока полоса не станет меньше {@link #MIN_PIXELS_PER_TASK} пикселей; полосы
+ * не пересекаются, поэтому тело может писать в общий массив результата без синхронизации.
+ * Небольшие изображения и вызовы без пула обрабатываются одной полосой в вызывающем потоке.
+ * </p>
+ */
+public final class RowBands {
+
+    /**
+     * Минимальное количество пикселей в полосе, которую выгодно отдавать отдельной задаче.
+     */
+    public static final int MIN_PIXELS_PER_TASK = 1 << 16;
+
+    private RowBands() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Обработка строк {@code [fromRow, toRow)}.
+     */
+    @FunctionalInterface
+    public interface Band {
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * Обрабатывает строки {@code [0, rows)} полосами.
+     *
+     * @param rows      количество строк
+     * @param rowPixels количество пикселей в одной строке; для строк сегментов — в полосе высотой в сегмент
+     * @param band      обработка полосы строк
+     * @param parallel  пул ForkJoin или {@code null} для обработки в вызывающем потоке
+     */
+    public static void forEach(int rows, long rowPixels, Band band, ForkJoinPool parallel) {
+        if (rows <= 0) {
+            return;
+        }
+        if (parallel != null && rows > 1 && rows * rowPixels > 2L * MIN_PIXELS_PER_TASK) {
+            parallel.invoke(new BandTask(rowPixels, band, 0, rows));
+        } else {
+            band.run(0, rows);
+        }
+    }
+
+    private static final class BandTask extends RecursiveAction {
+
+        private final long rowPixels;
+        private final Band band;
+        private final int fromRow;
+        private final int toRow;
+
+        BandTask(long rowPixels, Band band, int fromRow, int toRow) {
+            this.rowPixels = rowPixels;
+            this.band = band;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow > 1 && (toRow - fromRow) * rowPixels > 2L * MIN_PIXELS_PER_TASK) {
+                int mid = (fromRow + toRow) >>> 1;
+                invokeAll(new BandTask(rowPixels, band, fromRow, mid), new BandTask(rowPixels, band, mid, toRow));
+                return;
+            }
+            band.run(fromRow, toRow);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.cipher.core.threading;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * Эталонное скалярное ядро escape-time. Формулы и порядок операций совпадают с исходной
+ * реализацией {@link MandelbrotThread} побитово — от них зависит расшифровка существующих файлов.
+ * <p>
+ * Внутренние точки распознаются досрочно и сразу получают {@code iters = 0}, как если бы
+ * исчерпали все итерации:
+ * <ul>
+ *   <li>точки главной кардиоиды и круга периода 2 — аналитически, без итераций;</li>
+ *   <li>остальные ограниченные орбиты — проверкой периодичности по Бренту: z сохраняется
+ *       через интервалы 1, 2, 4, 8, ... итераций, и при точном совпадении текущего z с сохранённым
+ *       орбита зациклилась и уже никогда не выйдет за радиус 2.</li>
+ * </ul>
+ * Сравнение точное, без допуска, поэтому досрочно завершаются только орбиты, которые и при
+ * полном переборе дошли бы до {@code MAX_ITER}: цвет пикселей не меняется.
+ * </p>
+ */
+public class ScalarMandelbrotKernel implements MandelbrotKernel {
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final double ZOOM;
+    private final int MAX_ITER;
+    private final double offsetX;
+    private final double offsetY;
+
+    /**
+     * @param imageWidth  ширина всего изображения (определяет центр)
+     * @param imageHeight высота всего изображения (определяет центр)
+     * @param ZOOM        уровень масштабирования
+     * @param MAX_ITER    максимальное количество итераций
+     * @param offsetX     смещение по оси X
+     * @param offsetY     смещение по оси Y
+     */
+    public ScalarMandelbrotKernel(int imageWidth, int imageHeight, double ZOOM, int MAX_ITER,
+                                  double offsetX, double offsetY) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.ZOOM = ZOOM;
+        this.MAX_ITER = MAX_ITER;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    @Override
+    public int imageWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int imageHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public int maxIter() {
+        return MAX_ITER;
+    }
+
+    @Override
+    public void iterateRow(int y, int fromX, int toX, int[] iters, double[] zxOut, double[] zyOut, int offset) {
+        int centerX = imageWidth / 2;
+        int centerY = imageHeight / 2;
+        double cY = (y - centerY) / ZOOM + offsetY;
+
+        for (int x = fromX; x < toX; x++) {
+            double zx = 0, zy = 0;
+            double cX = (x - centerX) / ZOOM + offsetX;
+            int iter = MAX_ITER;
+
+            if (isInMainCardioidOrBulb(cX, cY)) {
+                iter = 0;
+            } else {
+                double savedZx = 0, savedZy = 0;
+                int steps = 0;
+                int checkpoint = 1;
+                while (zx * zx + zy * zy < 4 && iter > 0) {
+                    double tmp = zx * zx - zy * zy + cX;
+                    zy = 2.0 * zx * zy + cY;
+                    zx = tmp;
+                    iter--;
+
+                    if (zx == savedZx && zy == savedZy) {
+                        iter = 0;
+                        break;
+                    }
+                    if (++steps == checkpoint) {
+                        steps = 0;
+                        checkpoint <<= 1;
+                        savedZx = zx;
+                        savedZy = zy;
+                    }
+                }
+            }
+
+            int i = offset + (x - fromX);
+            iters[i] = iter;
+            zxOut[i] = zx;
+            zyOut[i] = zy;
+        }
+    }
+
+    /**
+     * Проверяет принадлежность точки главной кардиоиде или кругу периода 2 множества Мандельброта.
+     * Орбиты таких точек ограничены, поэтому итерировать их не нужно.
+     *
+     * @param x реальная часть c
+     * @param y мнимая часть c
+     * @return true, если точка заведомо принадлежит множеству
+     */
+    public static boolean isInMainCardioidOrBulb(double x, double y) {
+        double y2 = y * y;
+        double xq = x - 0.25;
+        double q = xq * xq + y2;
+        if (q * (q + xq) <= 0.25 * y2) {
+            return true;
+        }
+        double xb = x + 1.0;
+        return xb * xb + y2 <= 0.0625;
+    }
+}
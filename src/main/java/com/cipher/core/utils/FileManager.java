@@ -1,5 +1,7 @@
 package com.cipher.core.utils;
 
+import com.cipher.core.dto.encryption.EncryptedData;
+import com.cipher.core.service.encryption.util.EncryptedFileFormat;
 import jakarta.annotation.PreDestroy;
 import javafx.scene.image.Image;
 import javafx.stage.FileChooser;
@@ -12,7 +14,6 @@ import org.springframework.stereotype.Component;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.ByteBuffer;
 import java.nio.file.Files;
 
 @Component
@@ -222,28 +223,13 @@ public class FileManager {
     }
 
     /**
-     * Сохраняет зашифрованное изображение с метаданными
+     * Сохраняет зашифрованное изображение с метаданными в формате {@link EncryptedFileFormat}
      */
-    public File saveEncryptedImage(byte[] sessionSalt, int attemptCount,
-                                    byte[] imageBytes, int originalWidth, int originalHeight,
-                                    int startX, int startY, int areaWidth, int areaHeight) throws IOException {
-
-        // Формат: соль(16) + attempts(4) + координаты и размеры(6 int) + данные
-        ByteBuffer buffer = ByteBuffer.allocate(16 + 4 + 24 + imageBytes.length);
-        buffer.put(sessionSalt);
-        buffer.putInt(attemptCount);
-        buffer.putInt(startX);
-        buffer.putInt(startY);
-        buffer.putInt(areaWidth);
-        buffer.putInt(areaHeight);
-        buffer.putInt(originalWidth);
-        buffer.putInt(originalHeight);
-        buffer.put(imageBytes);
-
-        File outFile = saveBytesToFile(buffer.array(),
+    public File saveEncryptedImage(EncryptedData data) throws IOException {
+        File outFile = saveBytesToFile(EncryptedFileFormat.encode(data),
                 "encrypted_" + System.currentTimeMillis() + ".bin");
-        logger.info("Зашифрованный файл сохранён: {}, размер данных {} байт",
-                outFile.getName(), imageBytes.length);
+        logger.info("Зашифрованный файл сохранён: {}, размер данных {} байт, палитра {}",
+                outFile.getName(), data.imageBytes().length, data.paletteVersion());
         return outFile;
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.cipher.core.utils;
 
 import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.threading.RowBands;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import lombok.Getter;
@@ -9,7 +10,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 @Getter
 @Component
@@ -61,39 +73,175 @@ public class ImageUtils {
     }
 
     /**
-     * Конвертирует BufferedImage в массив байт
+     * Конвертирует BufferedImage в массив байт RGB (по 3 байта на пиксель, построчно) в вызывающем потоке.
      */
     public byte[] imageToBytes(BufferedImage image) {
+        return imageToBytes(image, null);
+    }
+
+    /**
+     * Конвертирует BufferedImage в массив байт RGB (по 3 байта на пиксель, построчно).
+     * <p>
+     * Изображения {@code TYPE_INT_RGB} и {@code TYPE_INT_ARGB} упаковываются прямо из массива пикселей,
+     * остальные читаются построчно через {@code getRGB}. Большие изображения обрабатываются полосами
+     * строк параллельно в переданном пуле.
+     * </p>
+     *
+     * @param parallel пул ForkJoin или {@code null} для обработки в вызывающем потоке
+     */
+    public byte[] imageToBytes(BufferedImage image, ForkJoinPool parallel) {
         int width = image.getWidth(), height = image.getHeight();
-        byte[] bytes = new byte[width * height * 3];
-        int idx = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                bytes[idx++] = (byte) ((rgb >> 16) & 0xFF);
-                bytes[idx++] = (byte) ((rgb >> 8) & 0xFF);
-                bytes[idx++] = (byte) (rgb & 0xFF);
+        byte[] bytes = new byte[checkedPayloadLength(width, height)];
+        int[] pixels = intPixels(image);
+        RowBands.forEach(height, width, (fromY, toY) -> {
+            int[] row = pixels == null ? new int[width] : null;
+            for (int y = fromY; y < toY; y++) {
+                int[] src = pixels != null ? pixels : image.getRGB(0, y, width, 1, row, 0, width);
+                int from = pixels != null ? y * width : 0;
+                int idx = y * width * 3;
+                for (int x = 0; x < width; x++) {
+                    int rgb = src[from + x];
+                    bytes[idx++] = (byte) (rgb >> 16);
+                    bytes[idx++] = (byte) (rgb >> 8);
+                    bytes[idx++] = (byte) rgb;
+                }
             }
-        }
+        }, parallel);
         return bytes;
     }
 
     /**
-     * Конвертирует массив байт в BufferedImage
+     * Конвертирует массив байт в BufferedImage {@code TYPE_INT_RGB}, заполняя его массив пикселей напрямую.
      */
     public BufferedImage bytesToImage(byte[] bytes, int width, int height) {
-        if (bytes.length != width * height * 3)
+        return bytesToImage(ByteBuffer.wrap(bytes), width, height, null);
+    }
+
+    /**
+     * Конвертирует байты RGB от позиции до предела буфера в BufferedImage {@code TYPE_INT_RGB}
+     * в вызывающем потоке.
+     */
+    public BufferedImage bytesToImage(ByteBuffer bytes, int width, int height) {
+        return bytesToImage(bytes, width, height, null);
+    }
+
+    /**
+     * Конвертирует байты RGB от позиции до предела буфера в BufferedImage {@code TYPE_INT_RGB}.
+     * Буфер читается абсолютными методами, его позиция не меняется; подходит для файла,
+     * отображённого в память, — промежуточный {@code byte[]} не создаётся.
+     *
+     * @param parallel пул ForkJoin для полос строк больших изображений или {@code null}
+     *                 для обработки в вызывающем потоке
+     */
+    public BufferedImage bytesToImage(ByteBuffer bytes, int width, int height, ForkJoinPool parallel) {
+        return bytesToImage(bytes, width, height, null, parallel);
+    }
+
+    /**
+     * Конвертирует байты RGB в BufferedImage {@code TYPE_INT_RGB}, не заполняя прямоугольник {@code skip}:
+     * его байты не читаются из буфера, а пиксели остаются нулевыми, чтобы вызывающий код записал их сам.
+     * Если {@code skip} покрывает всё изображение, из буфера ничего не копируется.
+     *
+     * @param skip     область, которую не нужно заполнять, или {@code null}, чтобы заполнить всё изображение
+     * @param parallel пул ForkJoin для полос строк больших изображений или {@code null}
+     *                 для обработки в вызывающем потоке
+     */
+    public BufferedImage bytesToImage(ByteBuffer bytes, int width, int height, Rectangle skip,
+                                      ForkJoinPool parallel) {
+        if (bytes.remaining() != checkedPayloadLength(width, height))
             throw new IllegalArgumentException("Invalid byte array length");
+        int base = bytes.position();
         BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        int idx = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int r = bytes[idx++] & 0xFF;
-                int g = bytes[idx++] & 0xFF;
-                int b = bytes[idx++] & 0xFF;
-                img.setRGB(x, y, (r << 16) | (g << 8) | b);
-            }
+        Rectangle area = clip(skip, width, height);
+        if (area.width == width && area.height == height) {
+            return img;
         }
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        RowBands.forEach(height, width, (fromY, toY) -> {
+            byte[] row = new byte[width * 3];
+            for (int y = fromY; y < toY; y++) {
+                if (y >= area.y && y < area.y + area.height) {
+                    copyRow(bytes, base, pixels, width, y, 0, area.x, row);
+                    copyRow(bytes, base, pixels, width, y, area.x + area.width, width, row);
+                } else {
+                    copyRow(bytes, base, pixels, width, y, 0, width, row);
+                }
+            }
+        }, parallel);
         return img;
     }
+
+    /**
+     * Оборачивает массив байт RGB в BufferedImage без копирования: изображение читает пиксели прямо
+     * из {@code bytes}, поэтому изменения массива видны в изображении и наоборот.
+     * Подходит для показа только что зашифрованных данных; для попиксельной обработки
+     * быстрее {@link #bytesToImage(byte[], int, int)}.
+     *
+     * @return изображение {@code TYPE_CUSTOM} с растром байт в порядке R, G, B
+     */
+    public BufferedImage wrapBytes(byte[] bytes, int width, int height) {
+        if (bytes.length != checkedPayloadLength(width, height))
+            throw new IllegalArgumentException("Invalid byte array length");
+        DataBufferByte buffer = new DataBufferByte(bytes, bytes.length);
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width * 3, 3,
+                new int[]{0, 1, 2}, null);
+        ColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Переносит пиксели {@code [fromX, toX)} строки {@code y} из байт RGB в массив пикселей.
+     */
+    private static void copyRow(ByteBuffer bytes, int base, int[] pixels, int width, int y,
+                                int fromX, int toX, byte[] row) {
+        int length = (toX - fromX) * 3;
+        if (length == 0) {
+            return;
+        }
+        int i = y * width + fromX;
+        bytes.get(base + i * 3, row, 0, length);
+        for (int idx = 0; idx < length; idx += 3) {
+            pixels[i++] = (row[idx] & 0xFF) << 16 | (row[idx + 1] & 0xFF) << 8 | (row[idx + 2] & 0xFF);
+        }
+    }
+
+    /**
+     * @return часть {@code skip} внутри изображения или пустой прямоугольник в (0, 0)
+     */
+    private static Rectangle clip(Rectangle skip, int width, int height) {
+        if (skip == null) {
+            return new Rectangle();
+        }
+        Rectangle area = skip.intersection(new Rectangle(width, height));
+        return area.isEmpty() ? new Rectangle() : area;
+    }
+
+    private static int checkedPayloadLength(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be positive");
+        long length = (long) width * height * 3;
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image is too large: " + width + "x" + height);
+        return (int) length;
+    }
+
+    /**
+     * @return массив пикселей {@code TYPE_INT_RGB} или {@code TYPE_INT_ARGB}, строки которого идут подряд
+     *         с нулевого индекса, или {@code null}, если изображение так читать нельзя
+     */
+    private static int[] intPixels(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || !(raster.getDataBuffer() instanceof DataBufferInt buffer)
+                || buffer.getOffset() != 0
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel model)
+                || model.getScanlineStride() != image.getWidth()) {
+            return null;
+        }
+        return buffer.getData();
+    }
 }
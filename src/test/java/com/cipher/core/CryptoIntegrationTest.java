@@ -3,8 +3,13 @@ package com.cipher.core;
 import com.cipher.core.dto.encryption.EncryptedData;
 import com.cipher.core.service.encryption.*;
 import com.cipher.core.service.encryption.impl.*;
+import com.cipher.core.service.encryption.util.EncryptedFileFormat;
+import com.cipher.core.service.encryption.util.PrngVersion;
 import com.cipher.core.service.network.CryptoKeyManager;
 import com.cipher.core.service.network.impl.ECDHCryptoKeyManagerImpl;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
 import com.cipher.core.utils.FileManager;
 import com.cipher.core.utils.ImageUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +21,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
@@ -29,7 +35,9 @@ class CryptoIntegrationTest {
 
     private FileManager fileManager;
     private ImageUtils imageUtils;
-    private MandelbrotService mandelbrotService;
+    private RenderPool renderPool;
+    private RasterPool rasterPool;
+    private FractalRenderer fractalRenderer;
     private SegmentShuffler shuffler;
     private CryptoKeyManager aliceKeyManager;
     private CryptoKeyManager bobKeyManager;
@@ -58,8 +66,10 @@ class CryptoIntegrationTest {
         fileManager.createTempFolder();
 
         imageUtils = new ImageUtils();
-        mandelbrotService = new MandelbrotService();
-        shuffler = new ImageSegmentShufflerImpl();
+        renderPool = new RenderPool();
+        rasterPool = new RasterPool();
+        fractalRenderer = new FractalRenderer(renderPool, rasterPool);
+        shuffler = new ImageSegmentShufflerImpl(rasterPool, renderPool);
 
         // Создаём ECDH сервис
         ecdhService = new ECDHServiceImpl();
@@ -112,7 +122,7 @@ class CryptoIntegrationTest {
     @DisplayName("ИТ-1: generateNextFractal возвращает фрактал и сохраняет его в поле")
     void testGenerateNextFractalReturnsAndSavesFractal() throws Exception {
         byte[] secret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
-        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(mandelbrotService, shuffler, imageUtils);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
         encrypt.prepareSession(secret);
 
         BufferedImage image = createTestImage(200, 200);
@@ -136,7 +146,7 @@ class CryptoIntegrationTest {
     @DisplayName("ИТ-2: encryptWhole успешно шифрует изображение (автогенерация фрактала)")
     void testEncryptWholeCompletesSuccessfully() throws Exception {
         byte[] secret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
-        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(mandelbrotService, shuffler, imageUtils);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
         encrypt.prepareSession(secret);
 
         BufferedImage image = createTestImage(200, 200);
@@ -151,7 +161,7 @@ class CryptoIntegrationTest {
     void testEndToEndEncryptDecrypt() throws Exception {
         byte[] aliceSecret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
 
-        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(mandelbrotService, shuffler, imageUtils);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
         encrypt.prepareSession(aliceSecret);
 
         BufferedImage original = createTestImage(300, 300);
@@ -159,19 +169,9 @@ class CryptoIntegrationTest {
         EncryptedData encryptedData = encrypt.encryptWhole(original);
 
         // Сохраняем файл через FileManager
-        File encryptedFile = fileManager.saveEncryptedImage(
-                encryptedData.sessionSalt(),
-                encryptedData.attemptCount(),
-                encryptedData.imageBytes(),
-                encryptedData.originalWidth(),
-                encryptedData.originalHeight(),
-                encryptedData.startX(),
-                encryptedData.startY(),
-                encryptedData.areaWidth(),
-                encryptedData.areaHeight()
-        );
-
-        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(mandelbrotService, shuffler, imageUtils, bobKeyManager);
+        File encryptedFile = fileManager.saveEncryptedImage(encryptedData);
+
+        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
         BufferedImage decrypted = decrypt.decryptImage(encryptedFile);
 
         assertImagesEqual(original, decrypted);
@@ -181,7 +181,7 @@ class CryptoIntegrationTest {
     @DisplayName("ИТ-4: Частичное шифрование области и дешифрование")
     void testPartialEncryptDecrypt() throws Exception {
         byte[] secret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
-        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(mandelbrotService, shuffler, imageUtils);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
         encrypt.prepareSession(secret);
 
         BufferedImage original = createTestImage(400, 300);
@@ -190,19 +190,9 @@ class CryptoIntegrationTest {
         encrypt.generateNextFractal(original.getWidth(), original.getHeight());
         EncryptedData encryptedData = encrypt.encryptPart(original, area);
 
-        File encryptedFile = fileManager.saveEncryptedImage(
-                encryptedData.sessionSalt(),
-                encryptedData.attemptCount(),
-                encryptedData.imageBytes(),
-                encryptedData.originalWidth(),
-                encryptedData.originalHeight(),
-                encryptedData.startX(),
-                encryptedData.startY(),
-                encryptedData.areaWidth(),
-                encryptedData.areaHeight()
-        );
-
-        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(mandelbrotService, shuffler, imageUtils, bobKeyManager);
+        File encryptedFile = fileManager.saveEncryptedImage(encryptedData);
+
+        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
         BufferedImage decrypted = decrypt.decryptImage(encryptedFile);
 
         assertImagesEqual(original, decrypted);
@@ -215,26 +205,16 @@ class CryptoIntegrationTest {
         int[][] sizes = {{640, 480}, {1024, 768}, {1920, 1080}};
 
         for (int[] size : sizes) {
-            ImageEncryptorImpl encrypt = new ImageEncryptorImpl(mandelbrotService, shuffler, imageUtils);
+            ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
             encrypt.prepareSession(secret);
 
             BufferedImage original = createTestImage(size[0], size[1]);
             encrypt.generateNextFractal(original.getWidth(), original.getHeight());
             EncryptedData encryptedData = encrypt.encryptWhole(original);
 
-            File encryptedFile = fileManager.saveEncryptedImage(
-                    encryptedData.sessionSalt(),
-                    encryptedData.attemptCount(),
-                    encryptedData.imageBytes(),
-                    encryptedData.originalWidth(),
-                    encryptedData.originalHeight(),
-                    encryptedData.startX(),
-                    encryptedData.startY(),
-                    encryptedData.areaWidth(),
-                    encryptedData.areaHeight()
-            );
-
-            ImageDecryptorImpl decrypt = new ImageDecryptorImpl(mandelbrotService, shuffler, imageUtils, bobKeyManager);
+            File encryptedFile = fileManager.saveEncryptedImage(encryptedData);
+
+            ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
             BufferedImage decrypted = decrypt.decryptImage(encryptedFile);
 
             assertImagesEqual(original, decrypted);
@@ -253,9 +233,64 @@ class CryptoIntegrationTest {
         File badFile = tempDir.resolve("corrupted.bin").toFile();
         Files.write(badFile.toPath(), corrupted);
 
-        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(mandelbrotService, shuffler, imageUtils, bobKeyManager);
+        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
 
         assertThrows(Exception.class, () -> decrypt.decryptImage(badFile),
                 "Дешифрование битого файла должно выбрасывать исключение");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("ИТ-7: Файл старого формата без версии расшифровывается палитрой V1")
+    void testLegacyFormatDecryptsWithPaletteV1() throws Exception {
+        byte[] secret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
+        encrypt.setPaletteVersion(PaletteVersion.V1);
+        encrypt.setPrngVersion(PrngVersion.SHA1PRNG);
+        encrypt.prepareSession(secret);
+
+        BufferedImage original = createTestImage(320, 240);
+        encrypt.generateNextFractal(original.getWidth(), original.getHeight());
+        EncryptedData encryptedData = encrypt.encryptWhole(original);
+
+        // Исходный формат: соль + attempts + 6 int + данные, без сигнатуры и версии палитры
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 4 + 24 + encryptedData.imageBytes().length);
+        buffer.put(encryptedData.sessionSalt());
+        buffer.putInt(encryptedData.attemptCount());
+        buffer.putInt(encryptedData.startX());
+        buffer.putInt(encryptedData.startY());
+        buffer.putInt(encryptedData.areaWidth());
+        buffer.putInt(encryptedData.areaHeight());
+        buffer.putInt(encryptedData.originalWidth());
+        buffer.putInt(encryptedData.originalHeight());
+        buffer.put(encryptedData.imageBytes());
+        File legacyFile = fileManager.saveBytesToFile(buffer.array(), "legacy.bin");
+
+        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
+        assertImagesEqual(original, decrypt.decryptImage(legacyFile));
+    }
+
+    @Test
+    @DisplayName("ИТ-8: Файл формата 2 без версии генератора расшифровывается через SHA1PRNG")
+    void testPaletteFormatDecryptsWithSha1Prng() throws Exception {
+        byte[] secret = aliceKeyManager.getMasterSeedFromDH(bobAddress);
+        ImageEncryptorImpl encrypt = new ImageEncryptorImpl(fractalRenderer, shuffler, imageUtils, rasterPool, renderPool);
+        encrypt.setPrngVersion(PrngVersion.SHA1PRNG);
+        encrypt.prepareSession(secret);
+
+        BufferedImage original = createTestImage(320, 240);
+        encrypt.generateNextFractal(original.getWidth(), original.getHeight());
+        EncryptedData encryptedData = encrypt.encryptWhole(original);
+
+        // Формат 2: сигнатура + версия формата + версия палитры + поля исходного формата
+        byte[] current = EncryptedFileFormat.encode(encryptedData);
+        ByteBuffer buffer = ByteBuffer.allocate(current.length - 1);
+        buffer.put(current, 0, 4);
+        buffer.put((byte) EncryptedFileFormat.PALETTE_FORMAT);
+        buffer.put(current[5]);
+        buffer.put(current, 7, current.length - 7);
+        File paletteFormatFile = fileManager.saveBytesToFile(buffer.array(), "palette-format.bin");
+
+        ImageDecryptorImpl decrypt = new ImageDecryptorImpl(fractalRenderer, shuffler, imageUtils, bobKeyManager, renderPool);
+        assertImagesEqual(original, decrypt.decryptImage(paletteFormatFile));
+    }
+}
@@ -0,0 +1,152 @@
+package com.cipher.core.service.encryption;
+
+import com.cipher.core.service.encryption.util.AesCtrRandom;
+import com.cipher.core.service.encryption.util.PrngVersion;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AesCtrRandomTest {
+
+    private static byte[] key(int first) {
+        byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (first + i * 7);
+        }
+        return key;
+    }
+
+    /**
+     * Эталонный ключевой поток: AES-ECB от блоков счётчика 0, 1, 2, ...
+     */
+    private static byte[] referenceStream(byte[] key, int length) throws Exception {
+        Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+        ecb.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        byte[] counters = new byte[(length + 15) / 16 * 16];
+        ByteBuffer buffer = ByteBuffer.wrap(counters);
+        for (int block = 0; block < counters.length / 16; block++) {
+            buffer.putLong(block * 16 + 8, block);
+        }
+        byte[] stream = new byte[length];
+        System.arraycopy(ecb.doFinal(counters), 0, stream, 0, length);
+        return stream;
+    }
+
+    @Test
+    void nextBytes_shouldMatchAesCounterBlocks() throws Exception {
+        int length = 3 * 4096 + 100;
+        byte[] expected = referenceStream(key(1), length);
+
+        AesCtrRandom random = new AesCtrRandom(key(1));
+        byte[] actual = new byte[length];
+        byte[] head = new byte[37];
+        random.nextBytes(head);
+        byte[] tail = new byte[length - head.length];
+        random.nextBytes(tail);
+        System.arraycopy(head, 0, actual, 0, head.length);
+        System.arraycopy(tail, 0, actual, head.length, tail.length);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(length, random.position());
+    }
+
+    @Test
+    void nextInt_shouldReadBigEndianWordsAcrossBatches() throws Exception {
+        byte[] expected = referenceStream(key(2), 3 * 4096);
+        ByteBuffer words = ByteBuffer.wrap(expected);
+
+        AesCtrRandom random = new AesCtrRandom(key(2));
+        random.seek(4096 - 2);
+        words.position(4096 - 2);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(words.getInt(), random.nextInt());
+        }
+    }
+
+    @Test
+    void seek_shouldMatchSequentialDraws() {
+        AesCtrRandom sequential = new AesCtrRandom(key(3));
+        byte[] skipped = new byte[100_003];
+        sequential.nextBytes(skipped);
+        long[] expected = new long[50];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = sequential.nextLong();
+        }
+
+        AesCtrRandom random = new AesCtrRandom(key(3));
+        random.nextInt();
+        random.seek(100_003);
+        assertEquals(100_003, random.position());
+        for (long value : expected) {
+            assertEquals(value, random.nextLong());
+        }
+
+        random.seek(0);
+        AesCtrRandom fresh = new AesCtrRandom(key(3));
+        assertEquals(fresh.nextLong(), random.nextLong());
+    }
+
+    @Test
+    void sameKey_shouldGiveSamePermutation() {
+        int[] first = SegmentPermutation.shuffledIndices(10_000, new AesCtrRandom(key(4)));
+        int[] second = SegmentPermutation.shuffledIndices(10_000, PrngVersion.AES_CTR.create(key(4)));
+        int[] other = SegmentPermutation.shuffledIndices(10_000, new AesCtrRandom(key(5)));
+
+        assertArrayEquals(first, second);
+        assertFalse(java.util.Arrays.equals(first, other));
+    }
+
+    @Test
+    void nextInt_withBound_shouldStayInRangeAndCoverIt() {
+        AesCtrRandom random = new AesCtrRandom(key(6));
+        int[] counts = new int[7];
+        for (int i = 0; i < 70_000; i++) {
+            counts[random.nextInt(7)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 9_000 && count < 11_000, "Uneven distribution: " + count);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(Integer.MAX_VALUE - i);
+            assertTrue(value >= 0 && value < Integer.MAX_VALUE - i);
+        }
+        assertEquals(0, random.nextInt(1));
+        assertThrows(IllegalArgumentException.class, () -> random.nextInt(0));
+    }
+
+    @Test
+    void nextDouble_shouldStayInUnitInterval() {
+        AesCtrRandom random = new AesCtrRandom(key(7));
+        for (int i = 0; i < 10_000; i++) {
+            double value = random.nextDouble();
+            assertTrue(value >= 0.0 && value < 1.0);
+        }
+    }
+
+    @Test
+    void setSeed_shouldThrow() {
+        SecureRandom random = new AesCtrRandom(key(8));
+        assertThrows(UnsupportedOperationException.class, () -> random.setSeed(new byte[]{1}));
+        assertThrows(UnsupportedOperationException.class, () -> random.setSeed(1L));
+    }
+
+    @Test
+    void constructor_withInvalidKey_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new AesCtrRandom(null));
+        assertThrows(IllegalArgumentException.class, () -> new AesCtrRandom(new byte[20]));
+    }
+
+    @Test
+    void prngVersion_fromCode_shouldRoundTrip() {
+        for (PrngVersion version : PrngVersion.values()) {
+            assertEquals(version, PrngVersion.fromCode(version.code()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> PrngVersion.fromCode(99));
+    }
+}
@@ -0,0 +1,134 @@
+package com.cipher.core.service.encryption;
+
+import com.cipher.core.dto.encryption.EncryptedData;
+import com.cipher.core.dto.encryption.EncryptedFileHeader;
+import com.cipher.core.service.encryption.util.EncryptedFileFormat;
+import com.cipher.core.service.encryption.util.PrngVersion;
+import com.cipher.core.threading.PaletteVersion;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptedFileFormatTest {
+
+    private static byte[] salt(int first) {
+        byte[] salt = new byte[16];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) (first + i);
+        }
+        return salt;
+    }
+
+    private static byte[] legacyFile(byte[] salt, int attempts, int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 4 + 24 + width * height * 3);
+        buffer.put(salt);
+        buffer.putInt(attempts);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        return buffer.array();
+    }
+
+    @Test
+    void encode_thenReadHeader_shouldRoundTrip() {
+        byte[] payload = new byte[4 * 3 * 3];
+        payload[5] = 42;
+        EncryptedData data = new EncryptedData(salt(1), 7, 1, 2, 3, 1, 4, 3, payload, PaletteVersion.V2,
+                PrngVersion.AES_CTR);
+
+        ByteBuffer buffer = ByteBuffer.wrap(EncryptedFileFormat.encode(data));
+        EncryptedFileHeader header = EncryptedFileFormat.readHeader(buffer);
+
+        assertEquals(EncryptedFileFormat.CURRENT_FORMAT, header.formatVersion());
+        assertEquals(PaletteVersion.V2, header.paletteVersion());
+        assertEquals(PrngVersion.AES_CTR, header.prngVersion());
+        assertArrayEquals(salt(1), header.sessionSalt());
+        assertEquals(7, header.attemptCount());
+        assertEquals(1, header.startX());
+        assertEquals(2, header.startY());
+        assertEquals(3, header.areaWidth());
+        assertEquals(1, header.areaHeight());
+        assertEquals(4, header.fullWidth());
+        assertEquals(3, header.fullHeight());
+        assertEquals(payload.length, buffer.remaining());
+        assertEquals(42, buffer.get(buffer.position() + 5));
+    }
+
+    @Test
+    void readHeader_legacyFile_shouldUsePaletteV1() {
+        ByteBuffer buffer = ByteBuffer.wrap(legacyFile(salt(100), 3, 5, 2));
+        EncryptedFileHeader header = EncryptedFileFormat.readHeader(buffer);
+
+        assertEquals(EncryptedFileFormat.LEGACY_FORMAT, header.formatVersion());
+        assertEquals(PaletteVersion.V1, header.paletteVersion());
+        assertEquals(PrngVersion.SHA1PRNG, header.prngVersion());
+        assertArrayEquals(salt(100), header.sessionSalt());
+        assertEquals(3, header.attemptCount());
+        assertEquals(5 * 2 * 3, buffer.remaining());
+    }
+
+    @Test
+    void readHeader_paletteFormatFile_shouldUseSha1Prng() {
+        byte[] legacy = legacyFile(salt(50), 4, 3, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(6 + legacy.length);
+        buffer.put(new byte[]{'M', 'F', 'C', 'E'});
+        buffer.put((byte) EncryptedFileFormat.PALETTE_FORMAT);
+        buffer.put((byte) PaletteVersion.V2.code());
+        buffer.put(legacy);
+        buffer.flip();
+
+        EncryptedFileHeader header = EncryptedFileFormat.readHeader(buffer);
+
+        assertEquals(EncryptedFileFormat.PALETTE_FORMAT, header.formatVersion());
+        assertEquals(PaletteVersion.V2, header.paletteVersion());
+        assertEquals(PrngVersion.SHA1PRNG, header.prngVersion());
+        assertArrayEquals(salt(50), header.sessionSalt());
+        assertEquals(4, header.attemptCount());
+        assertEquals(3 * 2 * 3, buffer.remaining());
+    }
+
+    @Test
+    void encode_withoutPrngVersion_shouldThrow() {
+        EncryptedData data = new EncryptedData(salt(1), 1, 0, 0, 1, 1, 1, 1, new byte[3], PaletteVersion.V2, null);
+        assertThrows(IllegalArgumentException.class, () -> EncryptedFileFormat.encode(data));
+    }
+
+    @Test
+    void readHeader_legacySaltStartingWithSignature_shouldFallBackToLegacy() {
+        // Соль старого файла случайно начинается с сигнатуры, версии формата и кода палитры
+        byte[] salt = salt(0);
+        salt[0] = 'M';
+        salt[1] = 'F';
+        salt[2] = 'C';
+        salt[3] = 'E';
+        salt[4] = (byte) EncryptedFileFormat.CURRENT_FORMAT;
+        salt[5] = (byte) PaletteVersion.V2.code();
+        salt[6] = (byte) PrngVersion.AES_CTR.code();
+        ByteBuffer buffer = ByteBuffer.wrap(legacyFile(salt, 1, 6, 4));
+
+        EncryptedFileHeader header = EncryptedFileFormat.readHeader(buffer);
+
+        assertEquals(EncryptedFileFormat.LEGACY_FORMAT, header.formatVersion());
+        assertEquals(PaletteVersion.V1, header.paletteVersion());
+        assertArrayEquals(salt, header.sessionSalt());
+        assertEquals(6 * 4 * 3, buffer.remaining());
+    }
+
+    @Test
+    void readHeader_tooShort_shouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> EncryptedFileFormat.readHeader(ByteBuffer.wrap(new byte[10])));
+    }
+
+    @Test
+    void encode_withInvalidSalt_shouldThrow() {
+        EncryptedData data = new EncryptedData(new byte[8], 1, 0, 0, 1, 1, 1, 1, new byte[3], PaletteVersion.V2,
+                PrngVersion.CURRENT);
+        assertThrows(IllegalArgumentException.class, () -> EncryptedFileFormat.encode(data));
+    }
+}
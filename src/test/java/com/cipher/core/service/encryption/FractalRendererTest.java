@@ -0,0 +1,638 @@
+package com.cipher.core.service.encryption;
+
+import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.dto.RenderedFractal;
+import com.cipher.core.dto.segmentation.SegmentMapping;
+import com.cipher.core.service.encryption.util.AesCtrRandom;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import com.cipher.core.service.encryption.util.XOR;
+import com.cipher.core.threading.CancellationToken;
+import com.cipher.core.threading.MandelbrotThread;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.PixelSinks;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
+import com.cipher.core.threading.RenderStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FractalRendererTest {
+
+    private RenderPool renderPool;
+    private FractalRenderer service;
+
+    @BeforeEach
+    void setUp() {
+        renderPool = new RenderPool();
+        service = new FractalRenderer(renderPool, new RasterPool());
+    }
+
+    @Test
+    void generateParams_shouldProduceValidValues() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        MandelbrotParams params = service.generateParams(prng);
+        assertTrue(params.zoom() >= 10_000);
+        assertTrue(params.zoom() <= 10_000 + 700 * 140);
+        assertTrue(params.offsetX() >= -0.9998);
+        assertTrue(params.offsetX() <= 0.45);
+        boolean valid = (params.offsetY() >= -0.7 && params.offsetY() <= -0.1) ||
+                (params.offsetY() >= 0.1 && params.offsetY() <= 0.7);
+        assertTrue(valid);
+        assertTrue(params.maxIter() >= 250);
+        assertTrue(params.maxIter() <= 250 + 100 * 10);
+    }
+
+    @Test
+    void generateImage_shouldCreateImageOfCorrectSize() {
+        BufferedImage img = service.generateImage(100, 80, 10000, -0.5, 0.0, 250);
+        assertNotNull(img);
+        assertEquals(100, img.getWidth());
+        assertEquals(80, img.getHeight());
+    }
+
+    @Test
+    void isFractalValid_withValidFractal_shouldReturnTrue() {
+        // Создаём изображение с равномерным распределением цветов
+        BufferedImage img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                int hue = (x * 36 / 100) % 36; // 36 бинов
+                int rgb = Color.HSBtoRGB(hue / 36f, 1.0f, 1.0f);
+                img.setRGB(x, y, rgb);
+            }
+        }
+        assertTrue(service.isFractalValid(img));
+    }
+
+    @Test
+    void isFractalValid_withTooManyDarkBlue_shouldReturnFalse() {
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 100; i++) {
+            if (i < 30) {
+                img.setRGB(i % 10, i / 10, 0x000040);
+            } else {
+                img.setRGB(i % 10, i / 10, 0xFF0000);
+            }
+        }
+        assertFalse(service.isFractalValid(img));
+    }
+
+    @Test
+    void isFractalValid_withPoorDistribution_shouldReturnFalse() {
+        BufferedImage img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        int rgb = Color.HSBtoRGB(0.0f, 1.0f, 1.0f);
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                img.setRGB(x, y, rgb);
+            }
+        }
+        assertFalse(service.isFractalValid(img));
+    }
+
+    @Test
+    void isFractalValid_withNoConsideredPixels_shouldReturnFalse() {
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                img.setRGB(x, y, 0x000040);
+            }
+        }
+        assertFalse(service.isFractalValid(img));
+    }
+
+    @Test
+    void isFractalValid_withBlackPixels_shouldExcludeThem() throws Exception {
+        BufferedImage img = new BufferedImage(360, 360, BufferedImage.TYPE_INT_RGB);
+        // заполняем 360*360 = 129600 пикселей
+        // 36 оттенков, каждый по 3600 пикселей (3600/129600 ≈ 2.78%)
+        for (int y = 0; y < 360; y++) {
+            for (int x = 0; x < 360; x++) {
+                // hue от 0 до 1 с шагом 1/36
+                float hue = ((x % 36) / 36.0f);
+                int rgb = Color.HSBtoRGB(hue, 1.0f, 1.0f);
+                // чередуем чёрные пиксели: каждый второй пиксель чёрный
+                if ((x + y) % 2 == 0) {
+                    img.setRGB(x, y, 0x000000);
+                } else {
+                    img.setRGB(x, y, rgb);
+                }
+            }
+        }
+        assertTrue(service.isFractalValid(img));
+    }
+
+    @Test
+    void isFractalValid_withOnlyBlackAndDarkBlue_shouldReturnFalse() {
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 100; i++) {
+            if (i < 50) {
+                img.setRGB(i % 10, i / 10, 0x000040);
+            } else {
+                img.setRGB(i % 10, i / 10, 0x000000);
+            }
+        }
+        assertFalse(service.isFractalValid(img));
+    }
+
+    @Test
+    void generateImage_withInterruptedException_shouldHandleGracefully() {
+        // Не можем легко сгенерировать InterruptedException, но проверим, что метод не падает
+        assertDoesNotThrow(() -> {
+            service.generateImage(100, 100, 10000, -0.5, 0.0, 250);
+        });
+    }
+
+    @Test
+    void offsetY_bothRangesOccur() {
+        SecureRandom prng = new SecureRandom();
+        boolean seenNegative = false, seenPositive = false;
+        for (int i = 0; i < 1000; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            if (p.offsetY() >= -0.7 && p.offsetY() <= -0.1) seenNegative = true;
+            if (p.offsetY() >= 0.1 && p.offsetY() <= 0.7) seenPositive = true;
+            if (seenNegative && seenPositive) break;
+        }
+        assertTrue(seenNegative && seenPositive, "Оба диапазона offsetY должны быть представлены");
+    }
+
+    @Test
+    void generateParams_boundaryZoom() {
+        SecureRandom prng = new SecureRandom();
+        // Проверка, что zoom всегда положительный и в диапазоне
+        for (int i = 0; i < 100; i++) {
+            MandelbrotParams params = service.generateParams(prng);
+            assertTrue(params.zoom() > 0);
+            assertTrue(params.zoom() >= 10_000);
+            assertTrue(params.zoom() <= 10_000 + 700 * 140);
+        }
+    }
+
+    @Test
+    void generateParams_negativeValuesNotProduced() {
+        SecureRandom prng = new SecureRandom();
+        for (int i = 0; i < 100; i++) {
+            MandelbrotParams params = service.generateParams(prng);
+            assertTrue(params.zoom() > 0);
+            assertTrue(params.maxIter() > 0);
+            // offsetX и offsetY могут быть отрицательными – это нормально
+            assertTrue(params.offsetX() >= -1.0 && params.offsetX() <= 0.5);
+            assertTrue(params.offsetY() >= -0.8 && params.offsetY() <= 0.8);
+        }
+    }
+
+    @Test
+    void generateImage_withNegativeWidth_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            service.generateImage(-100, 100, 10000, -0.5, 0.0, 250);
+        });
+    }
+
+    @Test
+    void generateImage_withZeroWidth_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            service.generateImage(0, 100, 10000, -0.5, 0.0, 250);
+        });
+    }
+
+    @Test
+    void generateImage_withZeroZoom_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.generateImage(100, 100, 0, -0.5, 0.0, 250));
+    }
+
+    @Test
+    void generateImage_withNegativeZoom_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.generateImage(100, 100, -1000, -0.5, 0.0, 250));
+    }
+
+    @Test
+    void generateImage_withZeroMaxIter_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.generateImage(100, 100, 10000, -0.5, 0.0, 0));
+    }
+
+    @Test
+    void generateImage_withNegativeMaxIter_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.generateImage(100, 100, 10000, -0.5, 0.0, -100));
+    }
+
+    @Test
+    void generateParams_withNullPrng_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.generateParams(null));
+    }
+
+    @Test
+    void generateImage_tiled_shouldMatchStripRenderPixelPerPixel() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(42L);
+        int width = 173, height = 91;
+        for (int i = 0; i < 3; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+
+            // Эталон: прежняя генерация одной полосой на всё изображение
+            BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            new MandelbrotThread(0, 0, width, height,
+                    p.zoom(), p.maxIter(), p.offsetX(), p.offsetY(), expected).run();
+
+            for (int tileSize : new int[]{1, 7, 32, FractalRenderer.DEFAULT_TILE_SIZE, 512}) {
+                service.setTileSize(tileSize);
+                BufferedImage actual = service.generateImage(width, height,
+                        p.zoom(), p.offsetX(), p.offsetY(), p.maxIter());
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y),
+                                "tileSize=" + tileSize + " mismatch at (" + x + "," + y + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void setTileSize_withNonPositiveValue_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> service.setTileSize(0));
+        assertThrows(IllegalArgumentException.class, () -> service.setTileSize(-16));
+    }
+
+    @Test
+    void renderTo_arrayAndBufferSinks_shouldMatchGeneratedImage() {
+        int width = 120, height = 70;
+        BufferedImage img = service.generateImage(width, height, 20000, -0.7, 0.3, 400);
+        int[] expected = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        // Массив с отступом и увеличенной длиной строки
+        int offset = 5, scanline = width + 3;
+        int[] array = new int[offset + scanline * height];
+        assertTrue(service.renderTo(PixelSinks.forArray(array, offset, scanline),
+                width, height, 20000, -0.7, 0.3, 400));
+
+        IntBuffer buffer = IntBuffer.allocate(width * height);
+        assertTrue(service.renderTo(PixelSinks.forBuffer(buffer, 0, width),
+                width, height, 20000, -0.7, 0.3, 400));
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                assertEquals(expected[i], array[offset + y * scanline + x] & 0x00FFFFFF);
+                assertEquals(expected[i], buffer.get(i) & 0x00FFFFFF);
+            }
+        }
+    }
+
+    @Test
+    void renderXor_shouldMatchXorWithGeneratedImage() {
+        int width = 150, height = 90;
+        BufferedImage fractal = service.generateImage(width, height, 20000, -0.7, 0.3, 400, PaletteVersion.V2);
+        Random random = new Random(3);
+
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            BufferedImage source = new BufferedImage(width, height, type);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    source.setRGB(x, y, random.nextInt());
+                }
+            }
+            BufferedImage expected = XOR.performXOR(source, fractal);
+
+            BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            assertTrue(service.renderXor(source, target, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+            assertArrayEquals(pixels(expected), pixels(target), "type " + type);
+
+            // Запись в само изображение: каждая строка читается до того, как в неё пишется результат
+            if (XOR.isInPlaceSupported(source)) {
+                assertTrue(service.renderXor(source, source, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(expected.getRGB(x, y), source.getRGB(x, y), "type " + type);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void renderXor_withUnsupportedTarget_shouldThrow() {
+        BufferedImage source = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        BufferedImage target = new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+        assertThrows(IllegalArgumentException.class, () ->
+                service.renderXor(source, target, 10000, -0.5, 0.0, 250, PaletteVersion.V1));
+    }
+
+    @Test
+    void renderUnshuffleXor_shouldMatchUnshuffleThenRenderXor() {
+        // 150x90 не кратно сегменту 4: крайние сегменты обрезаны
+        int width = 150, height = 90, segmentSize = 4;
+        Random random = new Random(5);
+        BufferedImage shuffled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                shuffled.setRGB(x, y, random.nextInt());
+            }
+        }
+        int[] indices = SegmentPermutation.shuffledIndices(
+                SegmentPermutation.segmentCount(width, height, segmentSize), new AesCtrRandom(new byte[32]));
+        SegmentMapping mapping = new SegmentMapping(segmentSize, SegmentPermutation.inverse(indices));
+
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        SegmentPermutation.apply(shuffled, expected, segmentSize, mapping.sourceSegments());
+        assertTrue(service.renderXor(expected, expected, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+
+        // Результат пишется в подизображение, как в область полного изображения при дешифровании
+        BufferedImage full = new BufferedImage(width + 7, height + 5, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < full.getHeight(); y++) {
+            for (int x = 0; x < full.getWidth(); x++) {
+                full.setRGB(x, y, 0x123456);
+            }
+        }
+        BufferedImage target = full.getSubimage(3, 2, width, height);
+        assertTrue(service.renderUnshuffleXor(shuffled, mapping, target, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+
+        for (int y = 0; y < full.getHeight(); y++) {
+            for (int x = 0; x < full.getWidth(); x++) {
+                int ex = x - 3, ey = y - 2;
+                boolean inside = ex >= 0 && ey >= 0 && ex < width && ey < height;
+                // Позиции, не покрытые обрезанным сегментом, остаются прозрачными в промежуточном изображении
+                int want = inside && (expected.getRGB(ex, ey) >>> 24) != 0
+                        ? expected.getRGB(ex, ey) : 0xFF123456;
+                assertEquals(want, full.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void renderUnshuffleXor_fromByteBuffer_shouldMatchImageSource() {
+        // Область 150x90 в (3, 2) изображения 157x95, как перемешанная область в файле
+        int width = 150, height = 90, segmentSize = 4;
+        int fullWidth = width + 7, fullHeight = height + 5, header = 11;
+        Random random = new Random(8);
+        byte[] bytes = new byte[header + fullWidth * fullHeight * 3];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        BufferedImage shuffled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = header + ((y + 2) * fullWidth + x + 3) * 3;
+                shuffled.setRGB(x, y, (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF);
+            }
+        }
+        int[] indices = SegmentPermutation.shuffledIndices(
+                SegmentPermutation.segmentCount(width, height, segmentSize), new AesCtrRandom(new byte[32]));
+        SegmentMapping mapping = new SegmentMapping(segmentSize, SegmentPermutation.inverse(indices));
+
+        // Непокрытые позиции получают байты самой области, как в заранее заполненном из файла изображении
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        expected.getGraphics().drawImage(shuffled, 0, 0, null);
+        assertTrue(service.renderUnshuffleXor(shuffled, mapping, expected, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+        BufferedImage actual = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        assertTrue(service.renderUnshuffleXor(buffer, header + (2 * fullWidth + 3) * 3, fullWidth * 3, mapping,
+                actual, 20000, -0.7, 0.3, 400, PaletteVersion.V2));
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void renderUnshuffleXor_withTooShortBuffer_shouldThrow() {
+        SegmentMapping mapping = new SegmentMapping(1, new int[]{0, 1, 2, 3});
+        BufferedImage target = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        assertThrows(IllegalArgumentException.class, () -> service.renderUnshuffleXor(ByteBuffer.allocate(11), 0, 6,
+                mapping, target, 10000, -0.5, 0.0, 250, PaletteVersion.V1));
+    }
+
+    @Test
+    void renderTo_withNullSink_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                service.renderTo(null, 10, 10, 10000, -0.5, 0.0, 250));
+    }
+
+    @Test
+    void generateCheckedImage_shouldAgreeWithIsFractalValid() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(7L);
+        int width = 160, height = 120;
+        int valid = 0, rejected = 0;
+        // Подходит лишь малая доля параметров: среди первых 80 с этим зерном их несколько
+        for (int i = 0; i < 80; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            for (PaletteVersion palette : PaletteVersion.values()) {
+                BufferedImage full = service.generateImage(width, height,
+                        p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), palette);
+                RenderedFractal checked = service.generateCheckedImage(width, height,
+                        p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), palette);
+
+                boolean expected = service.isFractalValid(full);
+                assertEquals(expected, checked.valid(), "params=" + p + ", palette=" + palette);
+                if (expected) {
+                    valid++;
+                    assertArrayEquals(((DataBufferInt) full.getRaster().getDataBuffer()).getData(),
+                            ((DataBufferInt) checked.image().getRaster().getDataBuffer()).getData());
+                } else {
+                    rejected++;
+                    assertNull(checked.image());
+                }
+            }
+        }
+        assertTrue(valid > 0 && rejected > 0, "valid=" + valid + ", rejected=" + rejected);
+    }
+
+    @Test
+    void generateCheckedImage_interiorView_shouldAbortBeforeFullRender() {
+        int width = 400, height = 300;
+        AtomicInteger rows = new AtomicInteger();
+        // Область целиком внутри главной кардиоиды
+        RenderStats stats = new RenderStats((long) width * height);
+
+        assertTrue(service.renderTo((x, y, pixels, offset, length) -> rows.incrementAndGet(), stats,
+                width, height, 10000, -0.2, 0.0, 250, PaletteVersion.CURRENT));
+        assertTrue(stats.isAborted());
+        assertFalse(stats.isValid());
+
+        int tilesPerRow = (width + FractalRenderer.DEFAULT_TILE_SIZE - 1) / FractalRenderer.DEFAULT_TILE_SIZE;
+        assertTrue(rows.get() < tilesPerRow * height / 2, "rows written: " + rows.get());
+        assertFalse(service.generateCheckedImage(width, height, 10000, -0.2, 0.0, 250, PaletteVersion.CURRENT).valid());
+    }
+
+    @Test
+    void isClearlyInvalid_shouldNeverRejectValidFractal() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(11L);
+        int width = 640, height = 480;
+        int valid = 0, prechecked = 0;
+        for (int i = 0; i < 150; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            boolean clearlyInvalid = service.isClearlyInvalid(width, height,
+                    p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT);
+            if (clearlyInvalid) {
+                prechecked++;
+            }
+            BufferedImage full = service.generateImage(width, height,
+                    p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT);
+            if (service.isFractalValid(full)) {
+                valid++;
+                assertFalse(clearlyInvalid, "valid fractal rejected by precheck: " + p);
+            }
+        }
+        assertTrue(valid > 0, "no valid fractals in sample");
+        // Большинство неподходящих параметров отсекается по выборке, без полной генерации
+        assertTrue(prechecked > (150 - valid) / 2, "prechecked=" + prechecked + ", valid=" + valid);
+    }
+
+    @Test
+    void isClearlyInvalid_interiorView_shouldReject() {
+        assertTrue(service.isClearlyInvalid(400, 300, 10000, -0.2, 0.0, 250, PaletteVersion.CURRENT));
+    }
+
+    @Test
+    void isClearlyInvalid_tooFewSamples_shouldDeferToFullCheck() {
+        assertFalse(service.isClearlyInvalid(100, 80, 10000, -0.2, 0.0, 250, PaletteVersion.CURRENT));
+    }
+
+    @Test
+    void renderTo_cancelledToken_shouldStopAfterCurrentRows() {
+        int width = 640, height = 480;
+        CancellationToken token = new CancellationToken();
+        AtomicInteger rows = new AtomicInteger();
+
+        boolean completed = service.renderTo((x, y, pixels, offset, length) -> {
+            if (rows.incrementAndGet() == 10) {
+                token.cancel();
+            }
+        }, null, token, width, height, 10000, -0.2, 0.0, 2000, PaletteVersion.CURRENT);
+
+        assertFalse(completed);
+        // После отмены каждый рабочий поток дописывает не больше одной строки
+        assertTrue(rows.get() <= 10 + renderPool.getParallelism(), "rows written: " + rows.get());
+    }
+
+    @Test
+    void renderTo_failingSink_shouldThrowInsteadOfReportingCompletion() {
+        RuntimeException failure = new IllegalStateException("sink failed");
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () ->
+                service.renderTo((x, y, pixels, offset, length) -> {
+                    throw failure;
+                }, 64, 64, 10000, -0.5, 0.0, 250));
+
+        assertSame(failure, rootCause(thrown));
+    }
+
+    @Test
+    void renderPreview_shouldStayCloseToPlainRender() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(11);
+        int width = 320, height = 240;
+        for (int i = 0; i < 5; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            int[] plain = new int[width * height];
+            int[] preview = new int[width * height];
+            assertTrue(service.renderTo(PixelSinks.forArray(plain, 0, width), width, height,
+                    p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT));
+            assertTrue(service.renderPreview(PixelSinks.forArray(preview, 0, width), width, height,
+                    p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT));
+
+            int differing = 0;
+            for (int j = 0; j < plain.length; j++) {
+                if (plain[j] != preview[j]) {
+                    differing++;
+                }
+            }
+            // Отличаться могут только нити внешней области тоньше пикселя
+            assertTrue(differing <= plain.length / 1000, p + ": " + differing + " pixels differ");
+        }
+    }
+
+    @Test
+    void renderPreview_failingSink_shouldThrowInsteadOfReportingCompletion() {
+        RuntimeException failure = new IllegalStateException("sink failed");
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () ->
+                service.renderPreview((x, y, pixels, offset, length) -> {
+                    throw failure;
+                }, 64, 64, 10000, -0.5, 0.0, 250, PaletteVersion.V1));
+
+        assertSame(failure, rootCause(thrown));
+    }
+
+    @Test
+    void generateImage_interruptedCaller_shouldReturnNullAndReleasePool() throws Exception {
+        BufferedImage notFinished = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        AtomicReference<BufferedImage> result = new AtomicReference<>(notFinished);
+        // Внутренность бульба периода 3, не отсекаемая проверкой кардиоиды: с таким числом
+        // итераций полная генерация заняла бы десятки секунд
+        Thread caller = new Thread(() -> result.set(
+                service.generateImage(1600, 1200, 40000, -0.122, 0.745, 100_000, PaletteVersion.CURRENT)));
+        caller.start();
+        Thread.sleep(100);
+
+        caller.interrupt();
+        caller.join(2000);
+
+        assertFalse(caller.isAlive());
+        assertNull(result.get());
+        assertTrue(renderPool.forkJoinPool().awaitQuiescence(1, TimeUnit.SECONDS));
+        assertEquals(0, renderPool.forkJoinPool().getActiveThreadCount());
+    }
+
+    @Test
+    void concurrentRenders_shouldMatchSequentialRenders() throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(3L);
+        List<MandelbrotParams> params = new ArrayList<>();
+        List<int[]> expected = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            params.add(p);
+            expected.add(pixels(service.generateImage(200, 150,
+                    p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT)));
+        }
+
+        // Один экземпляр без общего состояния обслуживает несколько потоков одновременно
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BufferedImage>> results = new ArrayList<>();
+            for (MandelbrotParams p : params) {
+                results.add(callers.submit(() -> service.generateImage(200, 150,
+                        p.zoom(), p.offsetX(), p.offsetY(), p.maxIter(), PaletteVersion.CURRENT)));
+            }
+            for (int i = 0; i < params.size(); i++) {
+                assertArrayEquals(expected.get(i), pixels(results.get(i).get()), "params " + params.get(i));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+}
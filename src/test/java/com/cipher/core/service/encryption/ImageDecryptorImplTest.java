@@ -1,16 +1,24 @@
 package com.cipher.core.service.encryption;
 
 import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.dto.encryption.EncryptedData;
+import com.cipher.core.dto.segmentation.SegmentMapping;
 import com.cipher.core.service.encryption.impl.ImageDecryptorImpl;
+import com.cipher.core.service.encryption.util.EncryptedFileFormat;
+import com.cipher.core.service.encryption.util.PrngVersion;
 import com.cipher.core.service.network.CryptoKeyManager;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.RenderPool;
 import com.cipher.core.utils.ImageUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.InetAddress;
@@ -18,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -26,11 +35,13 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ImageDecryptorImplTest {
 
-    @Mock private MandelbrotService mandelbrotService;
+    @Mock private FractalRenderer fractalRenderer;
     @Mock private SegmentShuffler segmentShuffler;
     @Mock private ImageUtils imageUtils;
     @Mock private CryptoKeyManager cryptoKeyManager;
 
+    @Spy private RenderPool renderPool = new RenderPool(1, 1);
+
     @InjectMocks
     private ImageDecryptorImpl imageDecryptor;
 
@@ -46,25 +57,27 @@ class ImageDecryptorImplTest {
 
         lenient().when(cryptoKeyManager.getConnectedPeer()).thenReturn(peerAddress);
         lenient().when(cryptoKeyManager.getMasterSeedFromDH(peerAddress)).thenReturn(sharedSecret);
-        lenient().when(mandelbrotService.generateParams(any(SecureRandom.class)))
+        lenient().when(fractalRenderer.generateParams(any(SecureRandom.class)))
                 .thenReturn(testParams);
     }
 
+    private static SegmentMapping mapping(int width, int height) {
+        return new SegmentMapping(1, new int[width * height]);
+    }
+
     @Test
     void decryptImage_shouldDecryptSuccessfully() throws Exception {
         int fullWidth = 100, fullHeight = 80;
         int areaWidth = 50, areaHeight = 40;
 
         BufferedImage encryptedImage = new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage fractalArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage unshuffledArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
 
-        when(imageUtils.bytesToImage(any(byte[].class), eq(fullWidth), eq(fullHeight)))
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
                 .thenReturn(encryptedImage);
-        when(mandelbrotService.generateImage(eq(areaWidth), eq(areaHeight), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(fractalArea);
-        when(segmentShuffler.unshuffle(any(BufferedImage.class), eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
-                .thenReturn(unshuffledArea);
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1)))
+                .thenReturn(true);
+        when(segmentShuffler.unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(areaWidth, areaHeight));
 
         int attempts = 3;
         int startX = 10, startY = 10;
@@ -88,11 +101,21 @@ class ImageDecryptorImplTest {
         assertEquals(fullWidth, result.getWidth());
         assertEquals(fullHeight, result.getHeight());
 
-        verify(mandelbrotService, times(attempts)).generateParams(any(SecureRandom.class));
-        verify(mandelbrotService, times(1))
-                .generateImage(eq(areaWidth), eq(areaHeight), anyDouble(), anyDouble(), anyDouble(), anyInt());
+        verify(fractalRenderer, times(attempts)).generateParams(any(SecureRandom.class));
+        // Фрактал генерируется сразу в XOR с восстановленной областью, без отдельного изображения
+        // Из файла копируется только окружение области, её пиксели пишет проход расшифровки
+        assertSame(encryptedImage, result);
+        verify(imageUtils).bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight),
+                eq(new Rectangle(startX, startY, areaWidth, areaHeight)), any());
+        // Перемешанные пиксели читаются прямо из буфера файла: смещение угла области и шаг строки в байтах
+        verify(fractalRenderer, times(1))
+                .renderUnshuffleXor(any(ByteBuffer.class), eq((startY * fullWidth + startX) * 3), eq(fullWidth * 3), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1));
+        verify(fractalRenderer, never())
+                .generateImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt(), any(PaletteVersion.class));
         verify(segmentShuffler, times(1))
-                .unshuffle(any(BufferedImage.class), eq(areaWidth), eq(areaHeight), any(SecureRandom.class));
+                .unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class));
+        verify(segmentShuffler, never())
+                .unshuffle(any(BufferedImage.class), anyInt(), anyInt(), any(SecureRandom.class));
 
         Files.deleteIfExists(tempFile);
     }
@@ -118,21 +141,33 @@ class ImageDecryptorImplTest {
         Files.deleteIfExists(tempFile);
     }
 
+    @Test
+    void decryptImage_withAreaOutsideImage_shouldThrow() throws Exception {
+        int fullWidth = 20, fullHeight = 10;
+        EncryptedData data = new EncryptedData(new byte[16], 1, 8, 0, 16, 10,
+                fullWidth, fullHeight, new byte[fullWidth * fullHeight * 3], PaletteVersion.V2, PrngVersion.CURRENT);
+        Path tempFile = Files.createTempFile("test", ".bin");
+        Files.write(tempFile, EncryptedFileFormat.encode(data));
+
+        assertThrows(IllegalArgumentException.class, () -> imageDecryptor.decryptImage(tempFile.toFile()));
+        verify(fractalRenderer, never())
+                .renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(), any(), anyDouble(), anyDouble(), anyDouble(), anyInt(), any());
+        Files.deleteIfExists(tempFile);
+    }
+
     @Test
     void decryptImage_withZeroAttempts_shouldGenerateOnce() throws Exception {
         int fullWidth = 10, fullHeight = 10;
         int areaWidth = 10, areaHeight = 10;
 
         BufferedImage encryptedImage = new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage fractalArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage unshuffledArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
 
-        when(imageUtils.bytesToImage(any(byte[].class), eq(fullWidth), eq(fullHeight)))
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
                 .thenReturn(encryptedImage);
-        when(mandelbrotService.generateImage(eq(areaWidth), eq(areaHeight), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(fractalArea);
-        when(segmentShuffler.unshuffle(any(BufferedImage.class), eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
-                .thenReturn(unshuffledArea);
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1)))
+                .thenReturn(true);
+        when(segmentShuffler.unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(areaWidth, areaHeight));
 
         int attempts = 0;
         byte[] imageBytes = new byte[fullWidth * fullHeight * 3];
@@ -151,7 +186,7 @@ class ImageDecryptorImplTest {
         File file = tempFile.toFile();
 
         imageDecryptor.decryptImage(file);
-        verify(mandelbrotService, times(1)).generateParams(any(SecureRandom.class));
+        verify(fractalRenderer, times(1)).generateParams(any(SecureRandom.class));
         Files.deleteIfExists(tempFile);
     }
 
@@ -161,15 +196,13 @@ class ImageDecryptorImplTest {
         int areaWidth = 30, areaHeight = 30;
 
         BufferedImage encryptedImage = new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage fractalArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage unshuffledArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
 
-        when(imageUtils.bytesToImage(any(byte[].class), eq(fullWidth), eq(fullHeight)))
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
                 .thenReturn(encryptedImage);
-        when(mandelbrotService.generateImage(eq(areaWidth), eq(areaHeight), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(fractalArea);
-        when(segmentShuffler.unshuffle(any(BufferedImage.class), eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
-                .thenReturn(unshuffledArea);
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1)))
+                .thenReturn(true);
+        when(segmentShuffler.unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(areaWidth, areaHeight));
 
         int attempts = 1;
         int startX = 5, startY = 5;
@@ -199,15 +232,13 @@ class ImageDecryptorImplTest {
         int areaWidth = 150, areaHeight = 150;
 
         BufferedImage encryptedImage = new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage fractalArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
-        BufferedImage unshuffledArea = new BufferedImage(areaWidth, areaHeight, BufferedImage.TYPE_INT_RGB);
 
-        when(imageUtils.bytesToImage(any(byte[].class), eq(fullWidth), eq(fullHeight)))
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
                 .thenReturn(encryptedImage);
-        when(mandelbrotService.generateImage(eq(areaWidth), eq(areaHeight), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(fractalArea);
-        when(segmentShuffler.unshuffle(any(BufferedImage.class), eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
-                .thenReturn(unshuffledArea);
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1)))
+                .thenReturn(true);
+        when(segmentShuffler.unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(areaWidth, areaHeight));
 
         int attempts = 2;
         int startX = 25, startY = 25;
@@ -231,6 +262,51 @@ class ImageDecryptorImplTest {
         Files.deleteIfExists(tempFile);
     }
 
+    @Test
+    void decryptImage_versionedFile_shouldUsePaletteFromHeader() throws Exception {
+        int fullWidth = 20, fullHeight = 10;
+        int areaWidth = 20, areaHeight = 10;
+
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
+                .thenReturn(new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB));
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V2)))
+                .thenReturn(true);
+        when(segmentShuffler.unshuffleMapping(eq(areaWidth), eq(areaHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(areaWidth, areaHeight));
+
+        EncryptedData data = new EncryptedData(new byte[16], 2, 0, 0, areaWidth, areaHeight,
+                fullWidth, fullHeight, new byte[fullWidth * fullHeight * 3], PaletteVersion.V2, PrngVersion.CURRENT);
+        Path tempFile = Files.createTempFile("test", ".bin");
+        Files.write(tempFile, EncryptedFileFormat.encode(data));
+
+        BufferedImage result = imageDecryptor.decryptImage(tempFile.toFile());
+        assertNotNull(result);
+        verify(fractalRenderer, times(2)).generateParams(any(SecureRandom.class));
+        verify(fractalRenderer, never())
+                .renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(), any(), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.V1));
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void decryptImage_interruptedRender_shouldThrowCancellation() throws Exception {
+        int fullWidth = 20, fullHeight = 10;
+
+        when(imageUtils.bytesToImage(any(ByteBuffer.class), eq(fullWidth), eq(fullHeight), any(Rectangle.class), any()))
+                .thenReturn(new BufferedImage(fullWidth, fullHeight, BufferedImage.TYPE_INT_RGB));
+        when(segmentShuffler.unshuffleMapping(eq(fullWidth), eq(fullHeight), any(SecureRandom.class)))
+                .thenReturn(mapping(fullWidth, fullHeight));
+        when(fractalRenderer.renderUnshuffleXor(any(ByteBuffer.class), anyInt(), anyInt(), any(SegmentMapping.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), any(PaletteVersion.class)))
+                .thenReturn(false);
+
+        EncryptedData data = new EncryptedData(new byte[16], 1, 0, 0, fullWidth, fullHeight,
+                fullWidth, fullHeight, new byte[fullWidth * fullHeight * 3], PaletteVersion.V2, PrngVersion.CURRENT);
+        Path tempFile = Files.createTempFile("test", ".bin");
+        Files.write(tempFile, EncryptedFileFormat.encode(data));
+
+        assertThrows(CancellationException.class, () -> imageDecryptor.decryptImage(tempFile.toFile()));
+        Files.deleteIfExists(tempFile);
+    }
+
     @Test
     void decryptImage_withNullFile_shouldThrow() {
         assertThrows(NullPointerException.class, () -> imageDecryptor.decryptImage(null));
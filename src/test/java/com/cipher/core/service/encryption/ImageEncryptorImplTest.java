@@ -1,9 +1,13 @@
 package com.cipher.core.service.encryption;
 
 import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.dto.RenderedFractal;
 import com.cipher.core.dto.encryption.EncryptedData;
 import com.cipher.core.dto.segmentation.SegmentationResult;
 import com.cipher.core.service.encryption.impl.ImageEncryptorImpl;
+import com.cipher.core.threading.PaletteVersion;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
 import com.cipher.core.utils.ImageUtils;
 import javafx.geometry.Rectangle2D;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,10 +15,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.awt.image.BufferedImage;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -23,10 +33,14 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ImageEncryptorImplTest {
 
-    @Mock private MandelbrotService mandelbrotService;
+    @Mock private FractalRenderer fractalRenderer;
     @Mock private SegmentShuffler segmentShuffler;
     @Mock private ImageUtils imageUtils;
 
+    // Пул с нулевым пределом ничего не хранит: изображения теста не переиспользуются
+    @Spy private RasterPool rasterPool = new RasterPool(0);
+    @Spy private RenderPool renderPool = new RenderPool(1, 1);
+
     @InjectMocks
     private ImageEncryptorImpl imageEncryptor;
 
@@ -46,13 +60,15 @@ class ImageEncryptorImplTest {
         testImageBytes = new byte[100 * 80 * 3];
         testParams = new MandelbrotParams(10000, -0.5, 0.0, 250);
 
-        lenient().when(mandelbrotService.generateParams(any(SecureRandom.class)))
+        lenient().when(fractalRenderer.generateParams(any(SecureRandom.class)))
                 .thenReturn(testParams);
-        lenient().when(mandelbrotService.generateImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt()))
+        lenient().when(fractalRenderer.generateImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
                 .thenReturn(fractalImage);
-        lenient().when(segmentShuffler.segmentAndShuffle(any(BufferedImage.class), any(SecureRandom.class)))
+        lenient().when(fractalRenderer.renderXor(any(BufferedImage.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
+                .thenReturn(true);
+        lenient().when(segmentShuffler.segmentAndShuffle(any(BufferedImage.class), any(SecureRandom.class), eq(false)))
                 .thenReturn(new SegmentationResult(shuffledImage, 1, 100, 80, null));
-        lenient().when(imageUtils.imageToBytes(any(BufferedImage.class)))
+        lenient().when(imageUtils.imageToBytes(any(BufferedImage.class), any()))
                 .thenReturn(testImageBytes);
     }
 
@@ -66,8 +82,8 @@ class ImageEncryptorImplTest {
         imageEncryptor.prepareSession(sharedSecret);
         BufferedImage result = imageEncryptor.generateNextFractal(100, 80);
         assertNotNull(result);
-        verify(mandelbrotService).generateParams(any(SecureRandom.class));
-        verify(mandelbrotService).generateImage(eq(100), eq(80), anyDouble(), anyDouble(), anyDouble(), anyInt());
+        verify(fractalRenderer).generateParams(any(SecureRandom.class));
+        verify(fractalRenderer).generateImage(eq(100), eq(80), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT));
     }
 
     @Test
@@ -84,9 +100,12 @@ class ImageEncryptorImplTest {
         assertNotNull(data.imageBytes());
         assertArrayEquals(testImageBytes, data.imageBytes());
         assertNotNull(data.sessionSalt());
+        assertEquals(PaletteVersion.CURRENT, data.paletteVersion());
 
-        verify(imageUtils).imageToBytes(any());
-        verify(segmentShuffler).segmentAndShuffle(any(), any());
+        verify(imageUtils).imageToBytes(any(), any());
+        verify(segmentShuffler).segmentAndShuffle(any(), any(), eq(false));
+        // Фрактал предпросмотра переиспользуется, а не генерируется заново
+        verify(fractalRenderer, never()).renderXor(any(), any(), anyDouble(), anyDouble(), anyDouble(), anyInt(), any());
     }
 
     @Test
@@ -96,9 +115,12 @@ class ImageEncryptorImplTest {
         EncryptedData data = imageEncryptor.encryptWhole(testImage);
 
         assertNotNull(data);
-        verify(mandelbrotService, atLeastOnce()).generateImage(eq(100), eq(80), anyDouble(), anyDouble(), anyDouble(), anyInt());
-        verify(segmentShuffler).segmentAndShuffle(any(), any());
-        verify(imageUtils).imageToBytes(any());
+        assertEquals(1, data.attemptCount());
+        // Фрактал генерируется сразу в XOR с изображением, без отдельного изображения фрактала
+        verify(fractalRenderer).renderXor(same(testImage), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT));
+        verify(fractalRenderer, never()).generateImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt(), any());
+        verify(segmentShuffler).segmentAndShuffle(any(), any(), eq(false));
+        verify(imageUtils).imageToBytes(any(), any());
     }
 
     @Test
@@ -106,11 +128,8 @@ class ImageEncryptorImplTest {
         imageEncryptor.prepareSession(sharedSecret);
         Rectangle2D area = new Rectangle2D(10, 10, 50, 40);
 
-        BufferedImage areaFractal = new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB);
-        when(mandelbrotService.generateImage(eq(50), eq(40), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(areaFractal);
         BufferedImage areaShuffled = new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB);
-        when(segmentShuffler.segmentAndShuffle(any(), any()))
+        when(segmentShuffler.segmentAndShuffle(any(), any(), eq(false)))
                 .thenReturn(new SegmentationResult(areaShuffled, 1, 50, 40, null));
 
         EncryptedData data = imageEncryptor.encryptPart(testImage, area);
@@ -124,9 +143,10 @@ class ImageEncryptorImplTest {
         assertEquals(40, data.areaHeight());
         assertNotNull(data.imageBytes());
 
-        verify(mandelbrotService).generateImage(eq(50), eq(40), anyDouble(), anyDouble(), anyDouble(), anyInt());
-        verify(segmentShuffler).segmentAndShuffle(any(), any());
-        verify(imageUtils).imageToBytes(any());
+        verify(fractalRenderer).renderXor(argThat(image -> image.getWidth() == 50 && image.getHeight() == 40),
+                any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT));
+        verify(segmentShuffler).segmentAndShuffle(any(), any(), eq(false));
+        verify(imageUtils).imageToBytes(any(), any());
     }
 
     @Test
@@ -135,17 +155,143 @@ class ImageEncryptorImplTest {
         imageEncryptor.generateNextFractal(100, 80); // большой фрактал
         Rectangle2D area = new Rectangle2D(0, 0, 30, 30);
 
-        BufferedImage areaFractal = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
-        when(mandelbrotService.generateImage(eq(30), eq(30), anyDouble(), anyDouble(), anyDouble(), anyInt()))
-                .thenReturn(areaFractal);
         BufferedImage areaShuffled = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
-        when(segmentShuffler.segmentAndShuffle(any(), any()))
+        when(segmentShuffler.segmentAndShuffle(any(), any(), eq(false)))
                 .thenReturn(new SegmentationResult(areaShuffled, 1, 30, 30, null));
 
         EncryptedData data = imageEncryptor.encryptPart(testImage, area);
         assertNotNull(data);
-        // Должен быть вызван generateImage для размера 30x30
-        verify(mandelbrotService).generateImage(eq(30), eq(30), anyDouble(), anyDouble(), anyDouble(), anyInt());
+        assertEquals(2, data.attemptCount());
+        // Ключевой поток для области 30x30 генерируется сразу в XOR
+        verify(fractalRenderer).renderXor(argThat(image -> image.getWidth() == 30 && image.getHeight() == 30),
+                any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT));
+    }
+
+    @Test
+    void generateValidFractal_shouldAcceptLowestValidCandidateAndKeepAttemptOrder() throws Exception {
+        imageEncryptor.prepareSession(sharedSecret);
+        imageEncryptor.setSpeculativeCandidates(4);
+        // Подходят только 6-я и 7-я попытки: обе попадают во второй пакет из четырёх кандидатов
+        stubNumberedCandidates(index -> index == 6 || index == 7);
+        List<Integer> rejected = new CopyOnWriteArrayList<>();
+
+        BufferedImage result = imageEncryptor.generateValidFractal(100, 80, 50, rejected::add);
+
+        assertNotNull(result);
+        assertEquals(6, candidateIndex(result));
+        assertEquals(List.of(1, 2, 3, 4, 5), rejected);
+        assertEquals(6, imageEncryptor.encryptWhole(testImage).attemptCount());
+
+        // Следующая попытка получает 7-е значение генератора, хотя оно уже было выбрано заранее
+        BufferedImage next = imageEncryptor.generateNextFractal(100, 80);
+        assertEquals(7, candidateIndex(next));
+        assertEquals(7, imageEncryptor.encryptWhole(testImage).attemptCount());
+    }
+
+    @Test
+    void generateValidFractal_withoutValidCandidates_shouldCountEveryAttempt() throws Exception {
+        imageEncryptor.prepareSession(sharedSecret);
+        imageEncryptor.setSpeculativeCandidates(4);
+        stubNumberedCandidates(index -> false);
+        List<Integer> rejected = new CopyOnWriteArrayList<>();
+
+        assertNull(imageEncryptor.generateValidFractal(100, 80, 5, rejected::add));
+        assertEquals(List.of(1, 2, 3, 4, 5), rejected);
+        verify(fractalRenderer, times(5)).generateParams(any(SecureRandom.class));
+
+        BufferedImage next = imageEncryptor.generateNextFractal(100, 80);
+        assertEquals(6, candidateIndex(next));
+        assertEquals(6, imageEncryptor.encryptWhole(testImage).attemptCount());
+    }
+
+    @Test
+    void generateValidFractal_precheckRejected_shouldSkipRenderAndCountAttempt() throws Exception {
+        imageEncryptor.prepareSession(sharedSecret);
+        stubNumberedCandidates(index -> index >= 2);
+        // Первые три попытки отсекаются по выборке, хотя полная проверка приняла бы 2-ю и 3-ю
+        when(fractalRenderer.isClearlyInvalid(anyInt(), anyInt(), doubleThat(zoom -> zoom <= 3), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
+                .thenReturn(true);
+        List<Integer> rejected = new CopyOnWriteArrayList<>();
+
+        BufferedImage result = imageEncryptor.generateValidFractal(100, 80, 50, rejected::add);
+
+        assertEquals(4, candidateIndex(result));
+        assertEquals(List.of(1, 2, 3), rejected);
+        assertEquals(4, imageEncryptor.encryptWhole(testImage).attemptCount());
+        verify(fractalRenderer, never()).generateCheckedImage(anyInt(), anyInt(), doubleThat(zoom -> zoom <= 3), anyDouble(), anyDouble(), anyInt(), any());
+    }
+
+    @Test
+    void generateValidFractal_shouldReturnUnusedCandidatesAndReplacedFractalToPool() throws Exception {
+        imageEncryptor.prepareSession(sharedSecret);
+        imageEncryptor.setSpeculativeCandidates(4);
+        // Подходят все попытки начиная со 2-й: принимается 2-я, готовые 3-5-я отбрасываются
+        List<BufferedImage> rendered = stubNumberedCandidates(index -> index >= 2);
+
+        BufferedImage preview = imageEncryptor.generateNextFractal(100, 80);
+        BufferedImage result = imageEncryptor.generateValidFractal(100, 80, 50, attempt -> { });
+
+        assertEquals(2, candidateIndex(result));
+        verify(rasterPool).release(preview);
+        for (BufferedImage image : rendered) {
+            if (image != result) {
+                verify(rasterPool).release(image);
+            }
+        }
+        verify(rasterPool, never()).release(result);
+
+        imageEncryptor.generateNextFractal(100, 80);
+        verify(rasterPool).release(result);
+    }
+
+    @Test
+    void setSpeculativeCandidates_withNonPositiveValue_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> imageEncryptor.setSpeculativeCandidates(0));
+    }
+
+    /**
+     * Параметры n-й попытки получают zoom = n, а изображение хранит этот номер в пикселе (0, 0).
+     * Проверку качества проходят только попытки, для которых {@code valid} возвращает true.
+     *
+     * @return изображения подходящих кандидатов, которые успели сгенерироваться
+     */
+    private List<BufferedImage> stubNumberedCandidates(IntPredicate valid) {
+        List<BufferedImage> rendered = new CopyOnWriteArrayList<>();
+        AtomicInteger drawn = new AtomicInteger();
+        when(fractalRenderer.generateParams(any(SecureRandom.class)))
+                .thenAnswer(inv -> new MandelbrotParams(drawn.incrementAndGet(), -0.5, 0.0, 250));
+        when(fractalRenderer.generateImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
+                .thenAnswer(inv -> {
+                    BufferedImage image = new BufferedImage(inv.getArgument(0), inv.getArgument(1), BufferedImage.TYPE_INT_RGB);
+                    image.setRGB(0, 0, (int) (double) inv.getArgument(2, Double.class));
+                    return image;
+                });
+        when(fractalRenderer.generateCheckedImage(anyInt(), anyInt(), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
+                .thenAnswer(inv -> {
+                    int index = (int) (double) inv.getArgument(2, Double.class);
+                    if (!valid.test(index)) {
+                        return RenderedFractal.rejected(null);
+                    }
+                    BufferedImage image = new BufferedImage(inv.getArgument(0), inv.getArgument(1), BufferedImage.TYPE_INT_RGB);
+                    image.setRGB(0, 0, index);
+                    rendered.add(image);
+                    return new RenderedFractal(image, true, null);
+                });
+        return rendered;
+    }
+
+    private static int candidateIndex(BufferedImage image) {
+        return image.getRGB(0, 0) & 0xFFFFFF;
+    }
+
+    @Test
+    void encryptWhole_interruptedRender_shouldThrowCancellation() throws Exception {
+        imageEncryptor.prepareSession(sharedSecret);
+        when(fractalRenderer.renderXor(any(BufferedImage.class), any(BufferedImage.class), anyDouble(), anyDouble(), anyDouble(), anyInt(), eq(PaletteVersion.CURRENT)))
+                .thenReturn(false);
+
+        assertThrows(CancellationException.class, () -> imageEncryptor.encryptWhole(testImage));
+        verify(segmentShuffler, never()).segmentAndShuffle(any(), any(), eq(false));
     }
 
     @Test
@@ -1,15 +1,33 @@
 package com.cipher.core.service.encryption;
 
+import com.cipher.core.dto.segmentation.SegmentMapping;
 import com.cipher.core.dto.segmentation.SegmentationResult;
 import com.cipher.core.service.encryption.impl.ImageSegmentShufflerImpl;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import com.cipher.core.threading.RasterPool;
+import com.cipher.core.threading.RenderPool;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ImageSegmentShufflerImplTest {
 
-    private final ImageSegmentShufflerImpl shuffler = new ImageSegmentShufflerImpl();
+    // Несколько потоков, чтобы перестановка больших изображений выполнялась по полосам параллельно
+    private final RenderPool renderPool = new RenderPool(4, 1);
+    private final ImageSegmentShufflerImpl shuffler = new ImageSegmentShufflerImpl(new RasterPool(), renderPool);
+
+    @AfterEach
+    void tearDown() {
+        renderPool.shutdown();
+    }
 
     @Test
     void generateSegmentSize_withSmallImage_shouldReturn1() {
@@ -130,4 +148,166 @@ class ImageSegmentShufflerImplTest {
         SecureRandom prng = new SecureRandom();
         assertThrows(IllegalArgumentException.class, () -> shuffler.unshuffle(null, 100, 100, prng));
     }
-}
\ No newline at end of file
+
+    @Test
+    void segmentAndShuffle_shouldMatchDrawImageReference() throws Exception {
+        // Размеры покрывают сегменты 1, 4 и 16 пикселей
+        int[][] sizes = {{100, 60}, {1000, 600}, {2048, 1024}};
+        for (int[] size : sizes) {
+            BufferedImage original = randomImage(size[0], size[1], 7);
+            int segmentSize = shuffler.generateSegmentSize(size[0], size[1]);
+
+            SegmentationResult result = shuffler.segmentAndShuffle(original, seeded(99));
+            SecureRandom referencePrng = seeded(99);
+            List<Integer> indices = referenceIndices(segments(size[0], size[1], segmentSize).size(), referencePrng);
+            BufferedImage expected = referencePermute(original, size[0], size[1], segmentSize, indices);
+
+            assertPixelsEqual(expected, result.shuffledImage());
+            for (int i = 0; i < indices.size(); i++) {
+                assertEquals((int) indices.get(i), result.segmentMapping()[i]);
+            }
+            // Перестановка расходует генератор так же, как прежняя
+            assertEquals(referencePrng.nextLong(), nextLongAfterShuffle(original, 99));
+        }
+    }
+
+    @Test
+    void segmentAndShuffle_withNonAlignedImage_shouldMatchPaddedCopy() throws Exception {
+        // 1001x603 не кратно сегменту 4: дополнение до 1004x604 виртуальное
+        BufferedImage original = randomImage(1001, 603, 12);
+        int segmentSize = shuffler.generateSegmentSize(1001, 603);
+        BufferedImage padded = shuffler.padImageToSegmentSize(original, segmentSize);
+
+        SegmentationResult result = shuffler.segmentAndShuffle(original, seeded(21));
+        List<Integer> indices = referenceIndices(segments(padded.getWidth(), padded.getHeight(), segmentSize).size(),
+                seeded(21));
+        BufferedImage expected = referencePermute(padded, padded.getWidth(), padded.getHeight(), segmentSize, indices);
+
+        assertEquals(1004, result.paddedWidth());
+        assertEquals(604, result.paddedHeight());
+        assertPixelsEqual(expected, result.shuffledImage());
+    }
+
+    @Test
+    void segmentAndShuffle_withoutMapping_shouldShuffleIdentically() throws Exception {
+        BufferedImage original = randomImage(40, 30, 3);
+        SegmentationResult withMapping = shuffler.segmentAndShuffle(original, seeded(8));
+        SegmentationResult withoutMapping = shuffler.segmentAndShuffle(original, seeded(8), false);
+
+        assertTrue(withMapping.hasMapping());
+        assertFalse(withoutMapping.hasMapping());
+        assertNull(withoutMapping.segmentMapping());
+        assertThrows(IllegalStateException.class, withoutMapping::inverseMapping);
+        assertPixelsEqual(withMapping.shuffledImage(), withoutMapping.shuffledImage());
+    }
+
+    @Test
+    void inverseMapping_shouldUndoMapping() throws Exception {
+        SegmentationResult result = shuffler.segmentAndShuffle(randomImage(40, 30, 4), seeded(9));
+        int[] mapping = result.segmentMapping();
+        int[] inverse = result.inverseMapping();
+
+        assertEquals(40 * 30, mapping.length);
+        for (int i = 0; i < mapping.length; i++) {
+            assertEquals(i, inverse[mapping[i]]);
+        }
+    }
+
+    @Test
+    void unshuffle_withPartialEdgeSegments_shouldMatchDrawImageReference() throws Exception {
+        // 801x601 не кратно сегменту 4: крайние сегменты сетки неполные
+        int width = 801, height = 601;
+        BufferedImage shuffled = randomImage(width, height, 11);
+        int segmentSize = shuffler.generateSegmentSize(width, height);
+        List<Integer> indices = referenceIndices(segments(width, height, segmentSize).size(), seeded(5));
+        List<Integer> reverse = new ArrayList<>(Collections.nCopies(indices.size(), 0));
+        for (int i = 0; i < indices.size(); i++) reverse.set(indices.get(i), i);
+
+        BufferedImage expected = referencePermute(shuffled, width, height, segmentSize, reverse);
+        assertPixelsEqual(expected, shuffler.unshuffle(shuffled, width, height, seeded(5)));
+    }
+
+    @Test
+    void unshuffleMapping_shouldMatchUnshuffle() throws Exception {
+        BufferedImage shuffled = randomImage(1001, 603, 13);
+        SegmentMapping mapping = shuffler.unshuffleMapping(1001, 603, seeded(17));
+        BufferedImage expected = shuffler.unshuffle(shuffled, 1001, 603, seeded(17));
+
+        BufferedImage actual = new BufferedImage(1001, 603, BufferedImage.TYPE_INT_ARGB);
+        SegmentPermutation.apply(shuffled, actual, mapping.segmentSize(), mapping.sourceSegments());
+
+        assertEquals(shuffler.generateSegmentSize(1001, 603), mapping.segmentSize());
+        assertPixelsEqual(expected, actual);
+    }
+
+    private long nextLongAfterShuffle(BufferedImage image, long seed) throws Exception {
+        SecureRandom prng = seeded(seed);
+        shuffler.segmentAndShuffle(image, prng);
+        return prng.nextLong();
+    }
+
+    private static SecureRandom seeded(long seed) throws Exception {
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(seed);
+        return prng;
+    }
+
+    private static BufferedImage randomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    // Прежняя реализация: List<Integer>, List<Rectangle> и drawImage на каждый сегмент
+
+    private static List<Rectangle> segments(int width, int height, int segmentSize) {
+        List<Rectangle> segments = new ArrayList<>();
+        for (int y = 0; y < height; y += segmentSize) {
+            for (int x = 0; x < width; x += segmentSize) {
+                segments.add(new Rectangle(x, y, Math.min(segmentSize, width - x), Math.min(segmentSize, height - y)));
+            }
+        }
+        return segments;
+    }
+
+    private static List<Integer> referenceIndices(int size, SecureRandom prng) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < size; i++) indices.add(i);
+        for (int i = indices.size() - 1; i > 0; i--) {
+            int j = prng.nextInt(i + 1);
+            Integer temp = indices.get(i);
+            indices.set(i, indices.get(j));
+            indices.set(j, temp);
+        }
+        return indices;
+    }
+
+    private static BufferedImage referencePermute(BufferedImage source, int width, int height,
+                                                  int segmentSize, List<Integer> sourceSegments) {
+        List<Rectangle> segments = segments(source.getWidth(), source.getHeight(), segmentSize);
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        for (int i = 0; i < segments.size(); i++) {
+            Rectangle src = segments.get(sourceSegments.get(i));
+            Rectangle dst = segments.get(i);
+            g.drawImage(source.getSubimage(src.x, src.y, src.width, src.height), dst.x, dst.y, null);
+        }
+        g.dispose();
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package com.cipher.core.service.encryption;
+
+import com.cipher.core.service.encryption.util.PrngVersion;
+import com.cipher.core.service.encryption.util.SegmentPermutation;
+import com.cipher.core.threading.RenderPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.security.SecureRandom;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Замеры перестановки сегментов на изображениях 4K и 8K с сегментами 1, 4 и 16 пикселей.
+ * <p>
+ * Не входит в обычный {@code test}: запускается задачей {@code ./gradlew benchmark}.
+ * Для каждого случая печатается время выбора перестановки из каждой версии {@link PrngVersion}
+ * (всегда последовательно) и лучшее из нескольких измерений её применения в одном потоке
+ * и в пуле {@link RenderPool}.
+ * </p>
+ */
+@Tag("benchmark")
+class SegmentPermutationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private final RenderPool renderPool = new RenderPool();
+
+    @AfterEach
+    void tearDown() {
+        renderPool.shutdown();
+    }
+
+    @Test
+    void applyPermutation_4K() throws Exception {
+        benchmark("4K", 3840, 2160);
+    }
+
+    @Test
+    void applyPermutation_8K() throws Exception {
+        benchmark("8K", 7680, 4320);
+    }
+
+    private void benchmark(String name, int width, int height) throws Exception {
+        BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+        Random random = new Random(1);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        BufferedImage sequential = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage parallel = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        System.out.printf("%s %dx%d, %d threads%n", name, width, height, renderPool.getParallelism());
+        for (int segmentSize : new int[]{1, 4, 16}) {
+            int count = SegmentPermutation.segmentCount(width, height, segmentSize);
+            int[] indices = null;
+            StringBuilder generate = new StringBuilder();
+            for (PrngVersion version : PrngVersion.values()) {
+                SecureRandom prng = version.create(new byte[32]);
+                long start = System.nanoTime();
+                indices = SegmentPermutation.shuffledIndices(count, prng);
+                generate.append(String.format(" %s %.1f ms,", version, (System.nanoTime() - start) / 1e6));
+            }
+            int[] permutation = indices;
+
+            long sequentialNanos = best(() -> SegmentPermutation.apply(source, sequential, segmentSize, permutation));
+            long parallelNanos = best(() -> SegmentPermutation.apply(source, parallel, segmentSize, permutation,
+                    renderPool.forkJoinPool()));
+            assertArrayEquals(data(sequential), data(parallel));
+
+            System.out.printf("  segment %2d: %,9d segments, permutation%s apply sequential %7.1f ms, "
+                            + "parallel %7.1f ms (x%.2f)%n",
+                    segmentSize, count, generate,
+                    sequentialNanos / 1e6, parallelNanos / 1e6, (double) sequentialNanos / parallelNanos);
+        }
+    }
+
+    private static long best(Runnable action) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            action.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            action.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static int[] data(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
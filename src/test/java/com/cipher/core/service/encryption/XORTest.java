@@ -1,9 +1,13 @@
 package com.cipher.core.service.encryption;
 
 import com.cipher.core.service.encryption.util.XOR;
+import com.cipher.core.threading.RasterPool;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.jupiter.api.Assertions.*;
 
 class XORTest {
@@ -42,4 +46,106 @@ class XORTest {
         BufferedImage img2 = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
         assertThrows(IllegalArgumentException.class, () -> XOR.performXOR(img1, img2));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Bulk XOR should be bit-identical to per-pixel XOR for every image type")
+    void performXOR_shouldMatchPerPixelReference() {
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+                BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR};
+        Random random = new Random(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (int type1 : types) {
+                for (int type2 : types) {
+                    BufferedImage img1 = randomImage(random, 700, 300, type1);
+                    BufferedImage img2 = randomImage(random, 700, 300, type2);
+                    int[] expected = pixels(referenceXOR(img1, img2));
+                    String what = "types " + type1 + "/" + type2;
+
+                    assertArrayEquals(expected, pixels(XOR.performXOR(img1, img2)), what);
+                    assertArrayEquals(expected, pixels(XOR.performXOR(img1, img2, new RasterPool(), parallel)), what);
+
+                    // Подизображения адресуются со смещением и шагом строки родителя
+                    BufferedImage sub1 = img1.getSubimage(13, 7, 301, 200);
+                    BufferedImage sub2 = img2.getSubimage(50, 61, 301, 200);
+                    assertArrayEquals(pixels(referenceXOR(sub1, sub2)),
+                            pixels(XOR.performXOR(sub1, sub2, null, parallel)), "sub " + what);
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("In-place XOR should read back the same pixels as a new result image")
+    void performXORInPlace_shouldMatchNewImageResult() {
+        Random random = new Random(2);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB}) {
+                BufferedImage target = randomImage(random, 640, 480, type);
+                BufferedImage key = randomImage(random, 640, 480, BufferedImage.TYPE_INT_RGB);
+                BufferedImage expected = referenceXOR(target, key);
+
+                assertSame(target, XOR.performXORInPlace(target, key, parallel));
+                for (int y = 0; y < 480; y++) {
+                    for (int x = 0; x < 640; x++) {
+                        assertEquals(expected.getRGB(x, y), target.getRGB(x, y), "type " + type + " at " + x + "," + y);
+                    }
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("In-place XOR into an image without int raster should throw")
+    void performXORInPlace_withUnsupportedType_shouldThrow() {
+        BufferedImage target = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage key = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        assertFalse(XOR.isInPlaceSupported(target));
+        assertThrows(IllegalArgumentException.class, () -> XOR.performXORInPlace(target, key, null));
+    }
+
+    /**
+     * Прежняя реализация: getRGB/setRGB для каждого пикселя.
+     */
+    private static BufferedImage referenceXOR(BufferedImage image1, BufferedImage image2) {
+        int width = image1.getWidth();
+        int height = image1.getHeight();
+        BufferedImage resultImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb1 = image1.getRGB(x, y);
+                int rgb2 = image2.getRGB(x, y);
+                int alpha = (rgb1 >> 24) & 0xFF;
+                int xorRGB = (rgb1 & 0x00FFFFFF) ^ (rgb2 & 0x00FFFFFF);
+                resultImage.setRGB(x, y, (alpha << 24) | (xorRGB & 0x00FFFFFF));
+            }
+        }
+        return resultImage;
+    }
+
+    private static BufferedImage randomImage(Random random, int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        if (type == BufferedImage.TYPE_INT_RGB) {
+            // Старший байт растра TYPE_INT_RGB не является альфа-каналом, но может быть ненулевым
+            int[] data = pixels(image);
+            for (int i = 0; i < data.length; i++) {
+                data[i] |= random.nextInt() & 0xFF000000;
+            }
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,136 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FractalValidatorTest {
+
+    private RenderPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new RenderPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void hueBin_shouldMatchColorRgbToHsbForEveryColour() {
+        float[] hsb = new float[3];
+        for (int rgb = 0; rgb <= 0xFFFFFF; rgb++) {
+            int expected = -1;
+            if (rgb != 0) {
+                Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, hsb);
+                int bin = (int) (hsb[0] * FractalValidator.HUE_BINS);
+                expected = bin >= 0 && bin < FractalValidator.HUE_BINS ? bin : -1;
+            }
+            int actual = FractalValidator.hueBin(rgb);
+            if (expected != actual) {
+                fail(String.format("rgb=%06x: expected %d, got %d", rgb, expected, actual));
+            }
+        }
+    }
+
+    @Test
+    void isValid_shouldMatchTwoPassReference() {
+        ForkJoinPool fjp = pool.forkJoinPool();
+        Random random = new Random(5);
+        int valid = 0;
+        for (int i = 0; i < 200; i++) {
+            int[] pixels = randomImage(random, 300 + random.nextInt(300_000));
+            boolean expected = referenceIsValid(pixels);
+            assertEquals(expected, FractalValidator.isValid(pixels, fjp), "image " + i);
+            if (expected) valid++;
+        }
+        assertTrue(valid > 0 && valid < 200, "valid=" + valid);
+    }
+
+    @Test
+    void isValid_interiorThreshold_shouldBeInclusive() {
+        ForkJoinPool fjp = pool.forkJoinPool();
+        int[] pixels = new int[36 * 40];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Color.HSBtoRGB((i % 36 + 0.5f) / 36f, 0.8f, 1.0f);
+        }
+        // Ровно 25% внутренних точек допустимо, на одну больше — нет
+        for (int i = 0; i < pixels.length / 4; i++) {
+            pixels[i * 4] = FractalValidator.INTERIOR_COLOR;
+        }
+        assertTrue(FractalValidator.isValid(pixels, fjp));
+        pixels[1] = FractalValidator.INTERIOR_COLOR;
+        assertFalse(FractalValidator.isValid(pixels, fjp));
+    }
+
+    /**
+     * Изображение со случайной долей внутренних, чёрных и цветных пикселей из случайного
+     * подмножества тонов, чтобы встречались оба исхода проверки.
+     */
+    private static int[] randomImage(Random random, int size) {
+        int[] pixels = new int[size];
+        double interiorRatio = random.nextDouble() * 0.4;
+        double blackRatio = random.nextDouble() * 0.1;
+        int hueCount = 1 + random.nextInt(40);
+        float hueBase = random.nextFloat();
+        for (int i = 0; i < size; i++) {
+            double roll = random.nextDouble();
+            if (roll < interiorRatio) {
+                pixels[i] = FractalValidator.INTERIOR_COLOR;
+            } else if (roll < interiorRatio + blackRatio) {
+                pixels[i] = 0xFF000000;
+            } else if (random.nextInt(50) == 0) {
+                pixels[i] = random.nextInt();
+            } else {
+                float hue = hueBase + random.nextInt(hueCount) / 40f;
+                pixels[i] = Color.HSBtoRGB(hue, 0.8f, 1.0f);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Прежняя реализация FractalRenderer.isFractalValid: два прохода и RGBtoHSB на пиксель.
+     */
+    private static boolean referenceIsValid(int[] pixels) {
+        int total = pixels.length;
+        int darkBlueCount = 0;
+        for (int p : pixels) {
+            if ((p & 0x00FFFFFF) == 0x000040) darkBlueCount++;
+        }
+        if ((double) darkBlueCount / total > 0.25) return false;
+
+        final int BINS = 36;
+        int[] binCounts = new int[BINS];
+        int totalConsidered = 0;
+        for (int p : pixels) {
+            int rgb = p & 0x00FFFFFF;
+            if (rgb == 0x000040 || rgb == 0x000000) continue;
+            float[] hsv = new float[3];
+            Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, hsv);
+            int bin = (int) (hsv[0] * BINS);
+            if (bin >= 0 && bin < BINS) {
+                binCounts[bin]++;
+                totalConsidered++;
+            }
+        }
+        if (totalConsidered == 0) return false;
+
+        int nonEmpty = 0;
+        int maxCount = 0;
+        for (int count : binCounts) {
+            if (count > 0) nonEmpty++;
+            if (count > maxCount) maxCount = count;
+        }
+        double maxRatio = (double) maxCount / totalConsidered;
+        return nonEmpty >= 20 && maxRatio <= 0.25;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitteredSampleKernelTest {
+
+    /**
+     * Ядро, которое записывает в iters номер пикселя y * width + x.
+     */
+    private record IndexKernel(int imageWidth, int imageHeight) implements MandelbrotKernel {
+        @Override
+        public int maxIter() {
+            return 100;
+        }
+
+        @Override
+        public void iterateRow(int y, int fromX, int toX, int[] iters, double[] zx, double[] zy, int offset) {
+            for (int x = fromX; x < toX; x++) {
+                iters[offset + x - fromX] = y * imageWidth + x;
+            }
+        }
+    }
+
+    @Test
+    void iterateRow_shouldSampleOnePixelInsideEachCell() {
+        int width = 103, height = 47, stride = 8;
+        JitteredSampleKernel kernel = new JitteredSampleKernel(new IndexKernel(width, height), stride, 42L);
+        assertEquals(13, kernel.imageWidth());
+        assertEquals(6, kernel.imageHeight());
+
+        Set<Integer> offsetsInCell = new HashSet<>();
+        int[] iters = new int[kernel.imageWidth() + 2];
+        for (int y = 0; y < kernel.imageHeight(); y++) {
+            kernel.iterateRow(y, 0, kernel.imageWidth(), iters, null, null, 2);
+            for (int x = 0; x < kernel.imageWidth(); x++) {
+                int px = iters[2 + x] % width;
+                int py = iters[2 + x] / width;
+                assertTrue(px >= x * stride && px < Math.min(width, (x + 1) * stride), "x=" + x + " px=" + px);
+                assertTrue(py >= y * stride && py < Math.min(height, (y + 1) * stride), "y=" + y + " py=" + py);
+                offsetsInCell.add((py - y * stride) * stride + px - x * stride);
+            }
+        }
+        // Точки не привязаны к одному положению в ячейке, как у регулярной сетки
+        assertTrue(offsetsInCell.size() > 20, "offsets=" + offsetsInCell.size());
+    }
+
+    @Test
+    void iterateRow_shouldDependOnlyOnSeedAndCell() {
+        IndexKernel full = new IndexKernel(640, 480);
+        JitteredSampleKernel first = new JitteredSampleKernel(full, 16, 7L);
+        JitteredSampleKernel second = new JitteredSampleKernel(full, 16, 7L);
+        JitteredSampleKernel other = new JitteredSampleKernel(full, 16, 8L);
+
+        int[] whole = new int[first.imageWidth()];
+        int[] parts = new int[first.imageWidth()];
+        int[] otherRow = new int[first.imageWidth()];
+        first.iterateRow(5, 0, whole.length, whole, null, null, 0);
+        second.iterateRow(5, 0, 10, parts, null, null, 0);
+        second.iterateRow(5, 10, parts.length, parts, null, null, 10);
+        other.iterateRow(5, 0, otherRow.length, otherRow, null, null, 0);
+
+        assertArrayEquals(whole, parts);
+        assertFalse(Arrays.equals(whole, otherRow));
+    }
+
+    @Test
+    void constructor_shouldRejectInvalidArguments() {
+        IndexKernel full = new IndexKernel(10, 10);
+        assertThrows(IllegalArgumentException.class, () -> new JitteredSampleKernel(null, 4, 0L));
+        assertThrows(IllegalArgumentException.class, () -> new JitteredSampleKernel(full, 0, 0L));
+    }
+}
@@ -0,0 +1,172 @@
+package com.cipher.core.threading;
+
+import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.service.encryption.FractalRenderer;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Golden-тест: SIMD-ядро должно давать побитово те же результаты, что и скалярное,
+ * во всём диапазоне параметров {@link FractalRenderer#generateParams(SecureRandom)}.
+ */
+class MandelbrotKernelTest {
+
+    private static final int WIDTH = 157;
+    private static final int HEIGHT = 97;
+
+    private static List<MandelbrotParams> goldenParams() throws Exception {
+        List<MandelbrotParams> params = new ArrayList<>();
+        // Границы диапазонов generateParams
+        params.add(new MandelbrotParams(10_000, -0.9998, -0.7, 250));
+        params.add(new MandelbrotParams(10_000 + 700 * 140, 0.45, 0.7, 1250));
+        params.add(new MandelbrotParams(10_000, 0.45, -0.1, 1250));
+        params.add(new MandelbrotParams(10_000 + 700 * 140, -0.9998, 0.1, 250));
+
+        FractalRenderer service = new FractalRenderer(new RenderPool(1, 1), new RasterPool());
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(20240917L);
+        for (int i = 0; i < 16; i++) {
+            params.add(service.generateParams(prng));
+        }
+        return params;
+    }
+
+    private static MandelbrotKernel kernel(KernelType type, MandelbrotParams p) {
+        return MandelbrotKernels.create(type, WIDTH, HEIGHT, p.zoom(), p.maxIter(), p.offsetX(), p.offsetY());
+    }
+
+    @Test
+    void scalarKernel_shouldProduceSameImageAsLegacyThread() throws Exception {
+        for (MandelbrotParams p : goldenParams()) {
+            BufferedImage legacy = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            new MandelbrotThread(0, 0, WIDTH, HEIGHT, p.zoom(), p.maxIter(), p.offsetX(), p.offsetY(), legacy).run();
+
+            BufferedImage scalar = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            new MandelbrotThread(0, 0, WIDTH, HEIGHT,
+                    new RenderContext(kernel(KernelType.SCALAR, p), PixelSinks.forImage(scalar), PaletteVersion.V1)).run();
+
+            assertArrayEquals(pixels(legacy), pixels(scalar), "params=" + p);
+        }
+    }
+
+    @Test
+    void vectorKernel_shouldMatchScalarIterationsBitForBit() throws Exception {
+        assumeTrue(MandelbrotKernels.isVectorAvailable(), "jdk.incubator.vector недоступен");
+
+        int[] scalarIters = new int[WIDTH];
+        int[] vectorIters = new int[WIDTH];
+        double[] scalarZx = new double[WIDTH];
+        double[] vectorZx = new double[WIDTH];
+        double[] scalarZy = new double[WIDTH];
+        double[] vectorZy = new double[WIDTH];
+
+        for (MandelbrotParams p : goldenParams()) {
+            MandelbrotKernel scalar = kernel(KernelType.SCALAR, p);
+            MandelbrotKernel vector = kernel(KernelType.VECTOR, p);
+            assertEquals("VectorMandelbrotKernel", vector.getClass().getSimpleName());
+
+            for (int y = 0; y < HEIGHT; y++) {
+                scalar.iterateRow(y, 0, WIDTH, scalarIters, scalarZx, scalarZy, 0);
+                vector.iterateRow(y, 0, WIDTH, vectorIters, vectorZx, vectorZy, 0);
+                for (int x = 0; x < WIDTH; x++) {
+                    String where = "params=" + p + " at (" + x + "," + y + ")";
+                    assertEquals(scalarIters[x], vectorIters[x], where);
+                    assertEquals(Double.doubleToRawLongBits(scalarZx[x]), Double.doubleToRawLongBits(vectorZx[x]), where);
+                    assertEquals(Double.doubleToRawLongBits(scalarZy[x]), Double.doubleToRawLongBits(vectorZy[x]), where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void vectorKernel_shouldProduceSameImageAsScalarInTiledRender() throws Exception {
+        assumeTrue(MandelbrotKernels.isVectorAvailable(), "jdk.incubator.vector недоступен");
+
+        for (MandelbrotParams p : goldenParams()) {
+            BufferedImage scalar = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            BufferedImage vector = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            // Тайлы размером 13 дают хвосты строк короче ширины вектора
+            ForkJoinPool.commonPool().invoke(new MandelbrotTileTask(0, 0, WIDTH, HEIGHT, 13, RenderMode.PLAIN,
+                    new RenderContext(kernel(KernelType.SCALAR, p), PixelSinks.forImage(scalar), PaletteVersion.V1)));
+            ForkJoinPool.commonPool().invoke(new MandelbrotTileTask(0, 0, WIDTH, HEIGHT, 13, RenderMode.PLAIN,
+                    new RenderContext(kernel(KernelType.VECTOR, p), PixelSinks.forImage(vector), PaletteVersion.V1)));
+            assertArrayEquals(pixels(scalar), pixels(vector), "params=" + p);
+        }
+    }
+
+    @Test
+    void interiorShortCircuit_shouldMatchPlainIterationOnWholeSet() {
+        // Малый зум: в кадр попадают кардиоида, круг периода 2 и множество мелких компонент
+        MandelbrotParams[] views = {
+                new MandelbrotParams(60, -0.5, 0.0, 1250),
+                new MandelbrotParams(400, -1.0, 0.25, 1000),
+                new MandelbrotParams(2000, -0.12, 0.65, 1250)
+        };
+        int[] iters = new int[WIDTH];
+        double[] zx = new double[WIDTH];
+        double[] zy = new double[WIDTH];
+        for (MandelbrotParams p : views) {
+            for (KernelType type : new KernelType[]{KernelType.SCALAR, KernelType.VECTOR}) {
+                MandelbrotKernel kernel = kernel(type, p);
+                for (int y = 0; y < HEIGHT; y++) {
+                    kernel.iterateRow(y, 0, WIDTH, iters, zx, zy, 0);
+                    for (int x = 0; x < WIDTH; x++) {
+                        double[] plain = plainIteration(x, y, p);
+                        String where = type + " params=" + p + " at (" + x + "," + y + ")";
+                        assertEquals((int) plain[0], iters[x], where);
+                        if (iters[x] > 0) {
+                            assertEquals(Double.doubleToRawLongBits(plain[1]), Double.doubleToRawLongBits(zx[x]), where);
+                            assertEquals(Double.doubleToRawLongBits(plain[2]), Double.doubleToRawLongBits(zy[x]), where);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void isInMainCardioidOrBulb_shouldRecogniseKnownPoints() {
+        assertTrue(ScalarMandelbrotKernel.isInMainCardioidOrBulb(0, 0));
+        assertTrue(ScalarMandelbrotKernel.isInMainCardioidOrBulb(-0.5, 0.3));
+        assertTrue(ScalarMandelbrotKernel.isInMainCardioidOrBulb(-1.0, 0.1));
+        assertFalse(ScalarMandelbrotKernel.isInMainCardioidOrBulb(0.3, 0));
+        assertFalse(ScalarMandelbrotKernel.isInMainCardioidOrBulb(-1.3, 0.2));
+        assertFalse(ScalarMandelbrotKernel.isInMainCardioidOrBulb(-0.75, 0.1));
+    }
+
+    /**
+     * Исходный цикл без досрочного выхода: {остаток итераций, zx, zy}.
+     */
+    private static double[] plainIteration(int x, int y, MandelbrotParams p) {
+        double cX = (x - WIDTH / 2) / p.zoom() + p.offsetX();
+        double cY = (y - HEIGHT / 2) / p.zoom() + p.offsetY();
+        double zx = 0, zy = 0;
+        int iter = p.maxIter();
+        while (zx * zx + zy * zy < 4 && iter > 0) {
+            double tmp = zx * zx - zy * zy + cX;
+            zy = 2.0 * zx * zy + cY;
+            zx = tmp;
+            iter--;
+        }
+        return new double[]{iter, zx, zy};
+    }
+
+    @Test
+    void create_withScalarType_shouldAlwaysReturnScalarKernel() {
+        MandelbrotKernel kernel = MandelbrotKernels.create(KernelType.SCALAR, 10, 10, 10000, 250, 0, 0);
+        assertInstanceOf(ScalarMandelbrotKernel.class, kernel);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
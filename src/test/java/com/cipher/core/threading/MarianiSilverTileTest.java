@@ -0,0 +1,127 @@
+package com.cipher.core.threading;
+
+import com.cipher.core.dto.MandelbrotParams;
+import com.cipher.core.service.encryption.FractalRenderer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarianiSilverTileTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int INTERIOR_COLOR = 0x000040;
+
+    /**
+     * Ядро-обёртка, считающее количество проитерированных пикселей.
+     */
+    private static final class CountingKernel implements MandelbrotKernel {
+        private final MandelbrotKernel delegate;
+        private final AtomicLong pixels = new AtomicLong();
+
+        CountingKernel(MandelbrotKernel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int imageWidth() {
+            return delegate.imageWidth();
+        }
+
+        @Override
+        public int imageHeight() {
+            return delegate.imageHeight();
+        }
+
+        @Override
+        public int maxIter() {
+            return delegate.maxIter();
+        }
+
+        @Override
+        public void iterateRow(int y, int fromX, int toX, int[] iters, double[] zx, double[] zy, int offset) {
+            pixels.addAndGet(toX - fromX);
+            delegate.iterateRow(y, fromX, toX, iters, zx, zy, offset);
+        }
+    }
+
+    private static CountingKernel kernel(MandelbrotParams p) {
+        return new CountingKernel(new ScalarMandelbrotKernel(WIDTH, HEIGHT, p.zoom(), p.maxIter(), p.offsetX(), p.offsetY()));
+    }
+
+    private static int[] render(CountingKernel kernel, RenderMode mode) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        ForkJoinPool.commonPool().invoke(new MandelbrotTileTask(0, 0, WIDTH, HEIGHT, 64, mode,
+                new RenderContext(kernel, PixelSinks.forArray(pixels, 0, WIDTH), PaletteVersion.V1)));
+        return pixels;
+    }
+
+    @Test
+    void interiorView_shouldBeFilledWithoutIteratingInsideRectangles() {
+        // Кадр целиком внутри главной кардиоиды
+        MandelbrotParams p = new MandelbrotParams(10_000, -0.2, 0.3, 1000);
+        CountingKernel plainKernel = kernel(p);
+        CountingKernel msKernel = kernel(p);
+
+        int[] plain = render(plainKernel, RenderMode.PLAIN);
+        int[] ms = render(msKernel, RenderMode.MARIANI_SILVER);
+
+        assertArrayEquals(plain, ms);
+        assertEquals((long) WIDTH * HEIGHT, plainKernel.pixels.get());
+        // Итерируются только границы листовых тайлов
+        assertTrue(msKernel.pixels.get() < plainKernel.pixels.get() / 5,
+                "iterated " + msKernel.pixels.get());
+    }
+
+    @Test
+    void exteriorPixels_shouldKeepExactSmoothColour() throws Exception {
+        FractalRenderer service = new FractalRenderer(new RenderPool(1, 1), new RasterPool());
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(6L);
+
+        for (int i = 0; i < 12; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            int[] plain = render(kernel(p), RenderMode.PLAIN);
+            int[] ms = render(kernel(p), RenderMode.MARIANI_SILVER);
+            for (int j = 0; j < plain.length; j++) {
+                // Отличаться может только залитый пиксель, и лишь по невидимой между пикселями нити
+                if (plain[j] != ms[j]) {
+                    assertEquals(INTERIOR_COLOR, ms[j], "params=" + p + " at " + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Печатает долю проитерированных пикселей, поэтому запускается только задачей {@code ./gradlew benchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark_pixelsIteratedAgainstPlainKernel() throws Exception {
+        FractalRenderer service = new FractalRenderer(new RenderPool(1, 1), new RasterPool());
+        SecureRandom prng = SecureRandom.getInstance("SHA1PRNG");
+        prng.setSeed(7L);
+
+        long plainTotal = 0;
+        long msTotal = 0;
+        for (int i = 0; i < 20; i++) {
+            MandelbrotParams p = service.generateParams(prng);
+            CountingKernel plainKernel = kernel(p);
+            CountingKernel msKernel = kernel(p);
+            render(plainKernel, RenderMode.PLAIN);
+            render(msKernel, RenderMode.MARIANI_SILVER);
+            assertTrue(msKernel.pixels.get() <= plainKernel.pixels.get(), "params=" + p);
+            plainTotal += plainKernel.pixels.get();
+            msTotal += msKernel.pixels.get();
+        }
+
+        System.out.printf("Mariani-Silver: итерировано %d пикселей из %d (%.1f%%)%n",
+                msTotal, plainTotal, 100.0 * msTotal / plainTotal);
+        assertTrue(msTotal < plainTotal);
+    }
+}
@@ -0,0 +1,77 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaletteVersionTest {
+
+    @Test
+    void fromCode_shouldResolveKnownVersions() {
+        for (PaletteVersion version : PaletteVersion.values()) {
+            assertSame(version, PaletteVersion.fromCode(version.code()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> PaletteVersion.fromCode(0));
+        assertThrows(IllegalArgumentException.class, () -> PaletteVersion.fromCode(99));
+    }
+
+    @Test
+    void v1_shouldBeExactLegacyColour() {
+        assertEquals(MandelbrotThread.getSmoothColor(17, 1.5, -1.7, 500),
+                PaletteVersion.V1.color(17, 1.5, -1.7, 500));
+    }
+
+    @Test
+    void tableLogarithm_shouldMatchStrictMath() {
+        for (double v = 0.5; v < 1e6; v *= 1.0137) {
+            assertEquals(StrictMath.log(v), PaletteV2.ln(v), 2e-7, "ln(" + v + ")");
+        }
+    }
+
+    @Test
+    void v2_shouldStayCloseToV1Hue() {
+        int maxIter = 800;
+        for (int iter = 1; iter <= maxIter; iter += 7) {
+            for (double angle = 0; angle < 6.28; angle += 0.9) {
+                for (double radius = 2.0; radius < 40; radius *= 1.7) {
+                    double zx = radius * Math.cos(angle);
+                    double zy = radius * Math.sin(angle);
+                    float h1 = hue(PaletteVersion.V1.color(iter, zx, zy, maxIter));
+                    float h2 = hue(PaletteVersion.V2.color(iter, zx, zy, maxIter));
+                    float diff = Math.abs(h1 - h2);
+                    assertTrue(Math.min(diff, 1 - diff) < 0.003f,
+                            "iter=" + iter + " z=(" + zx + "," + zy + ") h1=" + h1 + " h2=" + h2);
+                }
+            }
+        }
+    }
+
+    @Test
+    void v2_renderShouldBeDeterministic() {
+        BufferedImage first = render(PaletteVersion.V2);
+        BufferedImage second = render(PaletteVersion.V2);
+        assertArrayEquals(pixels(first), pixels(second));
+        assertFalse(java.util.Arrays.equals(pixels(first), pixels(render(PaletteVersion.V1))));
+    }
+
+    private static BufferedImage render(PaletteVersion palette) {
+        BufferedImage image = new BufferedImage(120, 90, BufferedImage.TYPE_INT_RGB);
+        new MandelbrotThread(0, 0, 120, 90, new RenderContext(
+                new ScalarMandelbrotKernel(120, 90, 20000, 600, -0.7, 0.3),
+                PixelSinks.forImage(image), palette)).run();
+        return image;
+    }
+
+    private static float hue(int rgb) {
+        float[] hsb = Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, null);
+        return hsb[0];
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,100 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RasterPoolTest {
+
+    @Test
+    void acquire_afterRelease_shouldReuseClearedArray() {
+        RasterPool pool = new RasterPool(1 << 20);
+        int[] first = pool.acquire(100);
+        first[7] = 42;
+        pool.release(first);
+
+        int[] second = pool.acquire(100);
+        assertSame(first, second);
+        assertEquals(0, second[7]);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void acquire_differentLength_shouldNotReuse() {
+        RasterPool pool = new RasterPool(1 << 20);
+        int[] raster = pool.acquire(100);
+        pool.release(raster);
+
+        assertNotSame(raster, pool.acquire(101));
+        assertEquals(400, pool.getPooledBytes());
+    }
+
+    @Test
+    void release_overLimit_shouldEvictOtherLengthsFirst() {
+        RasterPool pool = new RasterPool(1000);
+        pool.release(new int[200]);
+        assertEquals(800, pool.getPooledBytes());
+
+        int[] larger = new int[150];
+        pool.release(larger);
+        assertEquals(600, pool.getPooledBytes());
+        assertSame(larger, pool.acquire(150));
+
+        pool.release(new int[300]);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(1, pool.getDiscarded());
+    }
+
+    @Test
+    void zeroLimit_shouldNeverKeepArrays() {
+        RasterPool pool = new RasterPool(0);
+        int[] raster = pool.acquire(10);
+        pool.release(raster);
+
+        assertNotSame(raster, pool.acquire(10));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void acquireImage_shouldBeStandardTypeOverPooledArray() {
+        RasterPool pool = new RasterPool(1 << 20);
+        BufferedImage rgb = pool.acquireImage(20, 10, BufferedImage.TYPE_INT_RGB);
+        rgb.setRGB(3, 4, 0xFF123456);
+        assertEquals(BufferedImage.TYPE_INT_RGB, rgb.getType());
+        assertEquals(0xFF123456, rgb.getRGB(3, 4));
+        int[] data = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+        pool.release(rgb);
+
+        // Массив той же длины подходит изображению другой формы и типа
+        BufferedImage argb = pool.acquireImage(10, 20, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, argb.getType());
+        assertSame(data, ((DataBufferInt) argb.getRaster().getDataBuffer()).getData());
+        assertEquals(0, argb.getRGB(3, 4));
+    }
+
+    @Test
+    void releaseImage_subimage_shouldBeIgnored() {
+        RasterPool pool = new RasterPool(1 << 20);
+        BufferedImage image = pool.acquireImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        pool.release(image.getSubimage(0, 0, 10, 10));
+        pool.release((BufferedImage) null);
+
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void acquireImage_withUnsupportedType_shouldThrow() {
+        RasterPool pool = new RasterPool();
+        assertThrows(IllegalArgumentException.class, () -> pool.acquireImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+    }
+
+    @Test
+    void constructor_withNegativeLimit_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new RasterPool(-1));
+    }
+}
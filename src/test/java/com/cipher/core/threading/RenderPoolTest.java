@@ -0,0 +1,90 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderPoolTest {
+
+    private RenderPool renderPool;
+
+    @BeforeEach
+    void setUp() {
+        renderPool = new RenderPool(2, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renderPool.shutdown();
+    }
+
+    @Test
+    void invoke_shouldRunOnNamedWorkerThread() throws Exception {
+        String threadName = renderPool.invoke(ForkJoinTask.adapt(() -> Thread.currentThread().getName()));
+        assertTrue(threadName.startsWith(RenderPool.THREAD_NAME_PREFIX), threadName);
+    }
+
+    @Test
+    void invoke_shouldReuseWorkersAcrossJobs() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            renderPool.invoke(ForkJoinTask.adapt(() -> { }));
+        }
+        assertEquals(10, renderPool.getSubmittedJobs());
+        assertEquals(10, renderPool.getCompletedJobs());
+        assertEquals(0, renderPool.getActiveJobs());
+        assertTrue(renderPool.forkJoinPool().getPoolSize() <= 2);
+    }
+
+    @Test
+    void invoke_withFailingTask_shouldCountFailureAndReleaseSlot() throws Exception {
+        assertThrows(ExecutionException.class, () -> renderPool.invoke(ForkJoinTask.adapt(() -> {
+            throw new IllegalStateException("boom");
+        })));
+        assertEquals(1, renderPool.getFailedJobs());
+
+        // Слот освобождён — следующая задача выполняется
+        assertEquals(42, renderPool.invoke(ForkJoinTask.adapt(() -> 42)));
+    }
+
+    @Test
+    void invoke_whenCallerInterrupted_shouldHoldSlotUntilTaskFinishes() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            try {
+                renderPool.invoke(ForkJoinTask.adapt(() -> {
+                    started.countDown();
+                    finish.await();
+                    return null;
+                }));
+            } catch (Exception ignored) {
+                // прерывание ожидаемо
+            }
+        });
+        caller.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+
+        // Вызывающий поток ушёл, но задача ещё выполняется и занимает единственное место
+        assertEquals(1, renderPool.getActiveJobs());
+
+        finish.countDown();
+        assertEquals(42, renderPool.invoke(ForkJoinTask.adapt(() -> 42)));
+        assertEquals(0, renderPool.getActiveJobs());
+    }
+
+    @Test
+    void constructor_withInvalidArguments_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new RenderPool(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RenderPool(1, 0));
+    }
+}
@@ -0,0 +1,81 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderStatsTest {
+
+    private static final double[][] VIEWS = {
+            // zoom, offsetX, offsetY, maxIter
+            {150, -0.5, 0.0, 300},
+            {2000, -0.7435, 0.1314, 600},
+            {14480, 0.390574452382759, -0.3102471595021811, 510},
+            {10000, -0.2, 0.0, 250},
+    };
+
+    private RenderPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new RenderPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void kernelStats_shouldMatchStatsOfRenderedPixels() throws Exception {
+        int width = 257, height = 131;
+        for (double[] view : VIEWS) {
+            for (PaletteVersion palette : PaletteVersion.values()) {
+                for (RenderMode mode : RenderMode.values()) {
+                    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                    RenderStats stats = new RenderStats((long) width * height, false);
+                    pool.invoke(new MandelbrotTileTask(0, 0, width, height, 64, mode, new RenderContext(
+                            new ScalarMandelbrotKernel(width, height, view[0], (int) view[3], view[1], view[2]),
+                            PixelSinks.forImage(image), palette, stats, null)));
+
+                    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                    long[] expected = new long[FractalValidator.HUE_BINS + 1];
+                    FractalValidator.accumulate(pixels, 0, pixels.length, expected);
+
+                    String what = "view=" + view[0] + ", palette=" + palette + ", mode=" + mode;
+                    assertEquals(expected[FractalValidator.INTERIOR_SLOT], stats.getInteriorCount(), what);
+                    for (int bin = 0; bin < FractalValidator.HUE_BINS; bin++) {
+                        assertEquals(expected[bin], stats.getHueBins()[bin], what + ", bin=" + bin);
+                    }
+                    assertEquals(FractalValidator.isValid(pixels, pool.forkJoinPool()), stats.isValid(), what);
+                }
+            }
+        }
+    }
+
+    @Test
+    void interiorLimit_shouldAbortOnlyWhenEnabled() {
+        long[] local = new long[FractalValidator.HUE_BINS + 1];
+        local[FractalValidator.INTERIOR_SLOT] = 26;
+
+        RenderStats aborting = new RenderStats(100);
+        aborting.add(local);
+        assertTrue(aborting.isAborted());
+        assertFalse(aborting.isValid());
+
+        RenderStats sampling = new RenderStats(100, false);
+        sampling.add(local);
+        assertFalse(sampling.isAborted());
+        assertEquals(26, sampling.getInteriorCount());
+    }
+
+    @Test
+    void constructor_withNonPositiveTotal_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new RenderStats(0));
+    }
+}
@@ -0,0 +1,71 @@
+package com.cipher.core.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowBandsTest {
+
+    @Test
+    void forEach_withPool_shouldCoverEveryRowOnceInSeveralBands() {
+        int rows = 1000, width = 700;
+        AtomicIntegerArray visits = new AtomicIntegerArray(rows);
+        AtomicInteger bands = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RowBands.forEach(rows, width, (fromRow, toRow) -> {
+                bands.incrementAndGet();
+                assertTrue((long) (toRow - fromRow) * width <= 2L * RowBands.MIN_PIXELS_PER_TASK
+                        || toRow - fromRow == 1);
+                for (int y = fromRow; y < toRow; y++) {
+                    visits.incrementAndGet(y);
+                }
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int y = 0; y < rows; y++) {
+            assertEquals(1, visits.get(y), "row " + y);
+        }
+        assertTrue(bands.get() > 1);
+    }
+
+    @Test
+    void forEach_withoutPoolOrSmallImage_shouldRunSingleBandInCaller() {
+        Thread caller = Thread.currentThread();
+        AtomicInteger bands = new AtomicInteger();
+        RowBands.Band band = (fromRow, toRow) -> {
+            bands.incrementAndGet();
+            assertSame(caller, Thread.currentThread());
+            assertEquals(0, fromRow);
+        };
+
+        RowBands.forEach(1000, 700, band, null);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            RowBands.forEach(10, 700, band, pool);
+        } finally {
+            pool.shutdown();
+        }
+        RowBands.forEach(0, 700, band, null);
+
+        assertEquals(2, bands.get());
+    }
+
+    @Test
+    void forEach_shouldPropagateBandFailure() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertThrows(IllegalStateException.class, () -> RowBands.forEach(1000, 700, (fromRow, toRow) -> {
+                throw new IllegalStateException("band failed");
+            }, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
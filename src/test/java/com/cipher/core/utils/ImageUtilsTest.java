@@ -4,7 +4,15 @@ import com.cipher.core.dto.MandelbrotParams;
 import javafx.scene.image.Image;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ImageUtilsTest {
@@ -151,4 +159,152 @@ class ImageUtilsTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void imageToBytes_shouldMatchGetRgbForAllImageKinds() {
+        // 600x400 больше порога параллельной обработки
+        int width = 600, height = 400;
+        Random random = new Random(1);
+        BufferedImage parent = new BufferedImage(width + 10, height + 10, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < parent.getHeight(); y++) {
+            for (int x = 0; x < parent.getWidth(); x++) {
+                parent.setRGB(x, y, random.nextInt());
+            }
+        }
+        BufferedImage[] images = {
+                copy(parent.getSubimage(0, 0, width, height), BufferedImage.TYPE_INT_RGB),
+                copy(parent.getSubimage(0, 0, width, height), BufferedImage.TYPE_INT_ARGB),
+                copy(parent.getSubimage(0, 0, width, height), BufferedImage.TYPE_3BYTE_BGR),
+                parent.getSubimage(5, 7, width, height)
+        };
+
+        for (BufferedImage image : images) {
+            byte[] bytes = imageUtils.imageToBytes(image);
+            assertEquals(width * height * 3, bytes.length);
+            int idx = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    assertEquals((rgb >> 16) & 0xFF, bytes[idx++] & 0xFF);
+                    assertEquals((rgb >> 8) & 0xFF, bytes[idx++] & 0xFF);
+                    assertEquals(rgb & 0xFF, bytes[idx++] & 0xFF);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bytesToImage_largeImage_shouldRoundTrip() {
+        int width = 700, height = 300;
+        byte[] bytes = new byte[width * height * 3];
+        new Random(2).nextBytes(bytes);
+
+        BufferedImage image = imageUtils.bytesToImage(bytes, width, height);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+        assertEquals(0xFF000000 | (bytes[3 * 1234] & 0xFF) << 16 | (bytes[3 * 1234 + 1] & 0xFF) << 8
+                | (bytes[3 * 1234 + 2] & 0xFF), image.getRGB(1234 % width, 1234 / width));
+        assertArrayEquals(bytes, imageUtils.imageToBytes(image));
+    }
+
+    @Test
+    void bytesToImage_withPool_shouldRunBandsInGivenPoolAndMatchSequential() throws Exception {
+        int width = 700, height = 300;
+        byte[] bytes = new byte[width * height * 3];
+        new Random(4).nextBytes(bytes);
+        AtomicInteger workers = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(2, p -> {
+            workers.incrementAndGet();
+            return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        }, null, false);
+        try {
+            BufferedImage image = imageUtils.bytesToImage(ByteBuffer.wrap(bytes), width, height, pool);
+
+            assertArrayEquals(bytes, imageUtils.imageToBytes(image, pool));
+            assertArrayEquals(bytes, imageUtils.imageToBytes(image));
+            assertTrue(workers.get() > 0, "bands were not submitted to the given pool");
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void bytesToImage_fromByteBuffer_shouldReadRemainingBytes() {
+        int width = 700, height = 300;
+        byte[] bytes = new byte[5 + width * height * 3];
+        new Random(3).nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).position(5);
+
+        BufferedImage image = imageUtils.bytesToImage(buffer, width, height);
+
+        assertEquals(5, buffer.position());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 5, bytes.length), imageUtils.imageToBytes(image));
+        assertThrows(IllegalArgumentException.class, () -> imageUtils.bytesToImage(buffer.position(6), width, height));
+    }
+
+    @Test
+    void bytesToImage_withSkippedArea_shouldLeaveAreaEmptyAndCopyTheRest() {
+        int width = 700, height = 300;
+        Rectangle area = new Rectangle(100, 50, 400, 120);
+        byte[] bytes = new byte[width * height * 3];
+        new Random(5).nextBytes(bytes);
+        BufferedImage full = imageUtils.bytesToImage(bytes, width, height);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            BufferedImage image = imageUtils.bytesToImage(ByteBuffer.wrap(bytes), width, height, area, pool);
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int expected = area.contains(x, y) ? 0xFF000000 : full.getRGB(x, y);
+                    assertEquals(expected, image.getRGB(x, y), "pixel " + x + "," + y);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void bytesToImage_withWholeImageSkipped_shouldNotReadBuffer() {
+        int width = 20, height = 10;
+        ByteBuffer bytes = ByteBuffer.allocate(width * height * 3);
+        new Random(6).nextBytes(bytes.array());
+
+        BufferedImage image = imageUtils.bytesToImage(bytes, width, height,
+                new Rectangle(-5, -5, width + 10, height + 10), null);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(0xFF000000, image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void wrapBytes_shouldShareArrayWithImage() {
+        byte[] bytes = {0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+        BufferedImage image = imageUtils.wrapBytes(bytes, 2, 1);
+
+        assertEquals(0xFF112233, image.getRGB(0, 0));
+        assertEquals(0xFF445566, image.getRGB(1, 0));
+        bytes[3] = 0x7F;
+        assertEquals(0xFF7F5566, image.getRGB(1, 0));
+        assertArrayEquals(bytes, imageUtils.imageToBytes(image));
+    }
+
+    @Test
+    void wrapBytes_withInvalidLength_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> imageUtils.wrapBytes(new byte[5], 2, 1));
+    }
+
+    private static BufferedImage copy(BufferedImage image, int type) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,44 @@
+package com.cipher.core.service.encryption.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * XOR строки пикселей на Vector API ({@code jdk.incubator.vector}).
+ * <p>
+ * Считает то же, что и скалярный цикл {@link XOR}: {@code (a ^ (b & 0x00FFFFFF)) | alphaMask},
+ * по {@link IntVector#SPECIES_PREFERRED} пикселей за операцию. Хвост строки считается скалярно.
+ * Класс собирается отдельно от основного кода и вызывается из {@link XOR} через {@code MethodHandle},
+ * только когда модуль доступен в рантайме.
+ * </p>
+ */
+final class VectorXor {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorXor() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    static int laneCount() {
+        return SPECIES.length();
+    }
+
+    static void xorRow(int[] a, int aOffset, int alphaMask, int[] b, int bOffset,
+                       int[] out, int outOffset, int length) {
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, a, aOffset + i);
+            IntVector vb = IntVector.fromArray(SPECIES, b, bOffset + i);
+            va.lanewise(VectorOperators.XOR, vb.and(0x00FFFFFF))
+                    .or(alphaMask)
+                    .intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = (a[aOffset + i] ^ (b[bOffset + i] & 0x00FFFFFF)) | alphaMask;
+        }
+    }
+}
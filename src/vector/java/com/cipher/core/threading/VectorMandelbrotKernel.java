@@ -0,0 +1,150 @@
+package com.cipher.core.threading;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author @dankotyt Danil Kotlyarov
+ * SIMD-ядро escape-time на Vector API ({@code jdk.incubator.vector}).
+ * <p>
+ * Одновременно итерирует столько соседних пикселей строки, сколько дорожек у
+ * {@link DoubleVector#SPECIES_PREFERRED}. Дорожки, орбита которых уже вышла за радиус 2
+ * или исчерпала итерации, маскируются и больше не меняются; цикл заканчивается, когда
+ * не осталось активных дорожек. Каждая операция выполняется в том же порядке, что и в
+ * {@link ScalarMandelbrotKernel}, без FMA, поэтому результаты совпадают побитово.
+ * Досрочное распознавание внутренних точек (кардиоида, круг периода 2, периодичность по Бренту)
+ * выполняется по тем же правилам и на тех же итерациях, что и в скалярном ядре.
+ * Хвост строки короче ширины вектора считается скалярным ядром.
+ * </p>
+ * <p>
+ * Класс собирается отдельно от основного кода и создаётся только через {@link MandelbrotKernels},
+ * когда модуль доступен в рантайме.
+ * </p>
+ */
+public final class VectorMandelbrotKernel implements MandelbrotKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final double ZOOM;
+    private final int MAX_ITER;
+    private final double offsetX;
+    private final double offsetY;
+    private final ScalarMandelbrotKernel tailKernel;
+
+    public VectorMandelbrotKernel(int imageWidth, int imageHeight, double ZOOM, int MAX_ITER,
+                                  double offsetX, double offsetY) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.ZOOM = ZOOM;
+        this.MAX_ITER = MAX_ITER;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.tailKernel = new ScalarMandelbrotKernel(imageWidth, imageHeight, ZOOM, MAX_ITER, offsetX, offsetY);
+    }
+
+    /**
+     * @return количество дорожек вектора на текущей платформе
+     */
+    public static int laneCount() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int imageWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int imageHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public int maxIter() {
+        return MAX_ITER;
+    }
+
+    @Override
+    public void iterateRow(int y, int fromX, int toX, int[] iters, double[] zxOut, double[] zyOut, int offset) {
+        int lanes = SPECIES.length();
+        int centerX = imageWidth / 2;
+        int centerY = imageHeight / 2;
+        double cY = (y - centerY) / ZOOM + offsetY;
+
+        double[] cxLanes = new double[lanes];
+        double[] iterLanes = new double[lanes];
+        DoubleVector cyV = DoubleVector.broadcast(SPECIES, cY);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+
+        int x = fromX;
+        for (; x + lanes <= toX; x += lanes) {
+            boolean anyExterior = false;
+            for (int l = 0; l < lanes; l++) {
+                cxLanes[l] = (x + l - centerX) / ZOOM + offsetX;
+                boolean interior = ScalarMandelbrotKernel.isInMainCardioidOrBulb(cxLanes[l], cY);
+                iterLanes[l] = interior ? 0 : MAX_ITER;
+                anyExterior |= !interior;
+            }
+            int i = offset + (x - fromX);
+            if (!anyExterior) {
+                for (int l = 0; l < lanes; l++) {
+                    iters[i + l] = 0;
+                    zxOut[i + l] = 0;
+                    zyOut[i + l] = 0;
+                }
+                continue;
+            }
+
+            DoubleVector cxV = DoubleVector.fromArray(SPECIES, cxLanes, 0);
+            DoubleVector zx = zero;
+            DoubleVector zy = zero;
+            DoubleVector iter = DoubleVector.fromArray(SPECIES, iterLanes, 0);
+            DoubleVector savedZx = zero;
+            DoubleVector savedZy = zero;
+            int steps = 0;
+            int checkpoint = 1;
+
+            while (true) {
+                DoubleVector zx2 = zx.mul(zx);
+                DoubleVector zy2 = zy.mul(zy);
+                VectorMask<Double> active = zx2.add(zy2).lt(4.0)
+                        .and(iter.compare(VectorOperators.GT, 0.0));
+                if (!active.anyTrue()) {
+                    break;
+                }
+                // Тот же порядок операций, что и в скалярном ядре:
+                // tmp = (zx*zx - zy*zy) + cX;  zy = ((2.0*zx)*zy) + cY
+                DoubleVector nextZx = zx2.sub(zy2).add(cxV);
+                DoubleVector nextZy = zx.mul(2.0).mul(zy).add(cyV);
+                zx = zx.blend(nextZx, active);
+                zy = zy.blend(nextZy, active);
+                iter = iter.blend(iter.sub(1.0), active);
+
+                // Орбита вернулась точно в сохранённую точку — цикл, выхода не будет
+                VectorMask<Double> periodic = zx.eq(savedZx).and(zy.eq(savedZy)).and(active);
+                iter = iter.blend(zero, periodic);
+                if (++steps == checkpoint) {
+                    steps = 0;
+                    checkpoint <<= 1;
+                    savedZx = zx;
+                    savedZy = zy;
+                }
+            }
+
+            zx.intoArray(zxOut, i);
+            zy.intoArray(zyOut, i);
+            iter.intoArray(iterLanes, 0);
+            for (int l = 0; l < lanes; l++) {
+                iters[i + l] = (int) iterLanes[l];
+            }
+        }
+
+        if (x < toX) {
+            tailKernel.iterateRow(y, x, toX, iters, zxOut, zyOut, offset + (x - fromX));
+        }
+    }
+}